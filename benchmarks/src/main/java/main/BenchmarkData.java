@@ -0,0 +1,126 @@
+package main;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Синтетические поля и снимки экрана для замеров.
+ * Все данные строятся из фиксированного зерна и одинаковы от запуска к запуску.
+ * @author aNNiMON
+ */
+final class BenchmarkData {
+
+    /* Палитра синтетических полей */
+    static final int[] PALETTE = {
+        0xDC4A20, 0x7E9D1E, 0x605CA8, 0xF3F61D, 0x46B1E2, 0xED70A1,
+        0xFFFFFF, 0x8C5A2B
+    };
+    /* Параметры синтетического снимка экрана */
+    static final int SCREEN_WIDTH = 1024, SCREEN_HEIGHT = 768;
+    static final int SCREEN_BOARD_SIZE = 14, SCREEN_CELL_SIZE = 24;
+    static final int BUTTON_SIZE = 40;
+    /* Снимок рабочего стола 4K с окном игры */
+    static final int DESKTOP_WIDTH = 3840, DESKTOP_HEIGHT = 2160;
+    static final int DESKTOP_PIXELS = DESKTOP_WIDTH * DESKTOP_HEIGHT;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Случайное поле из colorsCount цветов палитры
+     * @param size размер поля
+     * @param colorsCount количество цветов
+     * @param seed зерно
+     * @return цвета клеток
+     */
+    static int[][] createTable(int size, int colorsCount, long seed) {
+        Random rnd = new Random(seed);
+        int[][] table = new int[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                table[i][j] = PALETTE[rnd.nextInt(colorsCount)];
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Представление поля для замеров отдельных операций
+     * @param table цвета клеток из палитры PALETTE
+     * @param engine представление
+     * @return начальное состояние
+     */
+    static FloodState createState(int[][] table, BotFloodIt.Engine engine) {
+        byte[][] ids = new byte[table.length][table.length];
+        for (int i = 0; i < table.length; i++) {
+            for (int j = 0; j < table.length; j++) {
+                for (int k = 0; k < PALETTE.length; k++) {
+                    if (PALETTE[k] == table[i][j]) ids[i][j] = (byte) k;
+                }
+            }
+        }
+        FloodBoard board = new FloodBoard(ids);
+        switch (engine) {
+            case CELLS:
+                return board;
+            case BITS:
+                return new BitBoard(board);
+            default:
+                return new RegionGraph(board).createState();
+        }
+    }
+
+    /**
+     * Синтетический снимок экрана: тёмный фон, поле в центре
+     * и кнопки цветов справа от поля
+     * @param seed зерно для цветов поля
+     * @return снимок SCREEN_WIDTH x SCREEN_HEIGHT
+     */
+    static BufferedImage createScreenshot(long seed) {
+        BufferedImage image = new BufferedImage(SCREEN_WIDTH, SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics g = image.getGraphics();
+        g.setColor(new Color(0x202020));
+        g.fillRect(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
+        int[][] table = createTable(SCREEN_BOARD_SIZE, 6, seed);
+        int x = getBoardX(), y = getBoardY();
+        for (int i = 0; i < SCREEN_BOARD_SIZE; i++) {
+            for (int j = 0; j < SCREEN_BOARD_SIZE; j++) {
+                g.setColor(new Color(table[i][j]));
+                g.fillRect(x + j * SCREEN_CELL_SIZE, y + i * SCREEN_CELL_SIZE, SCREEN_CELL_SIZE, SCREEN_CELL_SIZE);
+            }
+        }
+        int buttonX = x + SCREEN_BOARD_SIZE * SCREEN_CELL_SIZE + BUTTON_SIZE;
+        for (int i = 0; i < 6; i++) {
+            g.setColor(new Color(PALETTE[i]));
+            g.fillRect(buttonX, y + i * (BUTTON_SIZE + BUTTON_SIZE / 2), BUTTON_SIZE, BUTTON_SIZE);
+        }
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Снимок рабочего стола 3840x2160 с окном игры в центре
+     * @param window снимок окна игры
+     * @return снимок рабочего стола
+     */
+    static BufferedImage createDesktop(BufferedImage window) {
+        BufferedImage image = new BufferedImage(DESKTOP_WIDTH, DESKTOP_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics g = image.getGraphics();
+        g.setColor(new Color(0x202020));
+        g.fillRect(0, 0, DESKTOP_WIDTH, DESKTOP_HEIGHT);
+        g.drawImage(window, (DESKTOP_WIDTH - window.getWidth()) / 2,
+                (DESKTOP_HEIGHT - window.getHeight()) / 2, null);
+        g.dispose();
+        return image;
+    }
+
+    static int getBoardX() {
+        return (SCREEN_WIDTH - SCREEN_BOARD_SIZE * SCREEN_CELL_SIZE) / 2;
+    }
+
+    static int getBoardY() {
+        return (SCREEN_HEIGHT - SCREEN_BOARD_SIZE * SCREEN_CELL_SIZE) / 2;
+    }
+}
@@ -0,0 +1,95 @@
+package main;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Замер распознавания снимка экрана: поиск поля, кнопок и цветов клеток
+ * на снимке 1024x768, результат - снимков в секунду. Поиск поля на снимке
+ * рабочего стола 4K считается в пикселях: операция - один пиксель,
+ * результат в ops/us - мегапиксели в секунду.
+ * JVM замера запускается с модулем Vector API, подсчёт через него сравнивается со скалярным
+ * @author aNNiMON
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ImageBenchmark {
+
+    private BufferedImage screen;
+    private int[] buttonColors;
+
+    /**
+     * Снимок рабочего стола и режим его обработки
+     */
+    @State(Scope.Benchmark)
+    public static class Desktop {
+
+        @Param({"false", "true"})
+        public boolean parallel;
+
+        @Param({"false", "true"})
+        public boolean vector;
+
+        BufferedImage image;
+
+        @Setup
+        public void setup() {
+            image = BenchmarkData.createDesktop(BenchmarkData.createScreenshot(1));
+        }
+    }
+
+    @Setup
+    public void setup() {
+        screen = BenchmarkData.createScreenshot(1);
+        buttonColors = new int[6];
+        System.arraycopy(BenchmarkData.PALETTE, 0, buttonColors, 0, buttonColors.length);
+    }
+
+    @Benchmark
+    public Point getBoardParameters() {
+        ImageUtils iu = new ImageUtils(screen, BenchmarkData.SCREEN_BOARD_SIZE);
+        return iu.getBoardParameters();
+    }
+
+    @Benchmark
+    public Point[] getButtons() {
+        return createImageUtils().getButtons(buttonColors);
+    }
+
+    @Benchmark
+    public int[][] getBoardColors() {
+        return createImageUtils().getBoardColors();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(BenchmarkData.DESKTOP_PIXELS)
+    public Point getBoardParameters4k(Desktop desktop) {
+        ImageUtils iu = new ImageUtils(desktop.image, BenchmarkData.SCREEN_BOARD_SIZE);
+        iu.setParallel(desktop.parallel);
+        iu.setVector(desktop.vector);
+        return iu.getBoardParameters();
+    }
+
+    private ImageUtils createImageUtils() {
+        return new ImageUtils(screen, BenchmarkData.SCREEN_BOARD_SIZE, BenchmarkData.SCREEN_CELL_SIZE,
+                BenchmarkData.getBoardX(), BenchmarkData.getBoardY());
+    }
+}
@@ -0,0 +1,57 @@
+package main;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Замер решения поля целиком: создание BotFloodIt и последовательность до конца игры.
+ * Способ просчёта задаётся параметром, например -p search=BEAM.
+ * По умолчанию сравниваются полный перебор, перебор с отсечениями
+ * и перебор по потокам: их ходы совпадают, отличается только время.
+ * Результат - решённых полей в секунду
+ * @author aNNiMON
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolveBenchmark {
+
+    @Param({"14", "26", "50", "100"})
+    public int size;
+
+    @Param({"6", "8"})
+    public int colors;
+
+    @Param({"GREEDY", "PRUNED", "PARALLEL"})
+    public String search;
+
+    private int[][] table;
+    private BotFloodIt.Search mode;
+
+    @Setup
+    public void setup() {
+        table = BenchmarkData.createTable(size, colors, size * 31 + colors);
+        mode = BotFloodIt.Search.valueOf(search.toUpperCase(Locale.US));
+    }
+
+    @Benchmark
+    public byte[] solve() {
+        BotFloodIt bfi = new BotFloodIt(table);
+        bfi.setSearch(mode);
+        return bfi.getFillSequence();
+    }
+}
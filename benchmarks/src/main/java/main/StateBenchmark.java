@@ -0,0 +1,61 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Замер отдельных операций представлений поля 26x26 из шести цветов.
+ * Ход всегда отменяется, поэтому каждая операция выполняется над начальным полем.
+ * Результат - операций в секунду
+ * @author aNNiMON
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateBenchmark {
+
+    @Param({"CELLS", "REGIONS", "BITS"})
+    public BotFloodIt.Engine engine;
+
+    private FloodState state;
+    /* Цвет следующей операции, перебираются по кругу */
+    private byte color;
+
+    @Setup
+    public void setup() {
+        state = BenchmarkData.createState(BenchmarkData.createTable(26, 6, 26), engine);
+        color = 0;
+    }
+
+    @Benchmark
+    public byte fillUndo() {
+        color = (byte) ((color + 1) % 6);
+        state.fill(color);
+        state.undo();
+        return state.getColor();
+    }
+
+    @Benchmark
+    public int getFillCount() {
+        return state.getFillCount();
+    }
+
+    @Benchmark
+    public int getFillGain() {
+        color = (byte) ((color + 1) % 6);
+        return state.getFillGain(color);
+    }
+}
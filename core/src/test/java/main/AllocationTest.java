@@ -0,0 +1,159 @@
+package main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Проверка того, что просчёт ходов не выделяет память.
+ * Ходы делаются и отменяются на заранее созданных состояниях, журналы
+ * отмены копий рассчитаны на один ход, поэтому после прогрева цикл
+ * просчёта не выделяет ни байта. Замер - счётчик выделенной текущим
+ * потоком памяти, за вычетом стоимости самого замера
+ * @author aNNiMON
+ */
+public class AllocationTest {
+
+    /* Сколько раз повторять просчёт и сколько игр сыграть для прогрева */
+    private static final int WARMUP = 200, WARMUP_GAMES = 30;
+    /* Размер поля, количество цветов и глубина просчёта */
+    private static final int SIZE = 26, COLORS = 6, DEPTH = 4;
+
+    private com.sun.management.ThreadMXBean threads;
+    private byte[][] ids;
+    /* Память, которую выделяет сам замер */
+    private long overhead;
+
+    @Before
+    public void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        ids = createIds(SIZE, COLORS, 26);
+        overhead = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP; i++) {
+            long before = getAllocatedBytes();
+            overhead = Math.min(overhead, getAllocatedBytes() - before);
+        }
+    }
+
+    @Test
+    public void makeUnmakeSearchAllocatesNothing() {
+        for (BotFloodIt.Engine engine : new BotFloodIt.Engine[] {
+                BotFloodIt.Engine.CELLS, BotFloodIt.Engine.REGIONS, BotFloodIt.Engine.BITS}) {
+            FloodState state = createState(engine);
+            int[] fillRate = new int[(int) Math.pow(COLORS, DEPTH)];
+            for (int i = 0; i < WARMUP; i++) {
+                BotFloodIt.rateFills(state, COLORS, DEPTH, 0, 0, fillRate);
+            }
+            long before = getAllocatedBytes();
+            for (int i = 0; i < WARMUP; i++) {
+                BotFloodIt.rateFills(state, COLORS, DEPTH, 0, 0, fillRate);
+            }
+            long bytes = getAllocatedBytes() - before - overhead;
+            assertEquals(engine + " make/unmake search allocated", 0, bytes);
+        }
+    }
+
+    @Test
+    public void lookaheadTreeMovesAllocateNothing() {
+        for (BotFloodIt.Engine engine : new BotFloodIt.Engine[] {
+                BotFloodIt.Engine.REGIONS, BotFloodIt.Engine.BITS}) {
+            FloodState state = createState(engine);
+            int[] fillRate = new int[(int) Math.pow(COLORS, DEPTH)];
+            for (int i = 0; i < WARMUP_GAMES; i++) {
+                playLookahead(state, new LookaheadTree(state, COLORS, DEPTH), fillRate, false);
+            }
+            LookaheadTree tree = new LookaheadTree(state, COLORS, DEPTH);
+            long bytes = playLookahead(state, tree, fillRate, true);
+            assertEquals(engine + " lookahead moves allocated", 0, bytes);
+        }
+    }
+
+    @Test
+    public void prunedMovesAllocateNothing() {
+        FloodState state = createState(BotFloodIt.Engine.REGIONS);
+        PrunedSearch pruned = new PrunedSearch(state, COLORS, DEPTH, new TranspositionTable(1 << 20));
+        for (int i = 0; i < WARMUP_GAMES; i++) {
+            playPruned(state, pruned, false);
+        }
+        assertEquals("pruned moves allocated", 0, playPruned(state, pruned, true));
+    }
+
+    /*
+     * Сыграть игру деревом вариантов с выбором наибольшей площади
+     * и вернуть поле в начальное состояние.
+     * Возвращает память, выделенная ходами после создания дерева
+     */
+    private long playLookahead(FloodState state, LookaheadTree tree, int[] fillRate, boolean measure) {
+        int moves = 0;
+        long before = getAllocatedBytes();
+        while (!state.isCompleted()) {
+            tree.rateFills(fillRate);
+            int best = 0;
+            for (int i = 1; i < fillRate.length; i++) {
+                if (fillRate[i] > fillRate[best]) best = i;
+            }
+            byte color = (byte) (best % COLORS);
+            state.fill(color);
+            tree.advance(color);
+            moves++;
+        }
+        long bytes = getAllocatedBytes() - before - overhead;
+        undoAll(state, moves);
+        return measure ? bytes : 0;
+    }
+
+    /*
+     * Сыграть игру поиском с отсечениями и вернуть поле в начальное состояние
+     */
+    private long playPruned(FloodState state, PrunedSearch pruned, boolean measure) {
+        int moves = 0;
+        long before = getAllocatedBytes();
+        while (!state.isCompleted()) {
+            state.fill(pruned.getNextFillColor(state));
+            moves++;
+        }
+        long bytes = getAllocatedBytes() - before - overhead;
+        undoAll(state, moves);
+        return measure ? bytes : 0;
+    }
+
+    private static void undoAll(FloodState state, int moves) {
+        for (int i = 0; i < moves; i++) {
+            state.undo();
+        }
+    }
+
+    private long getAllocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private FloodState createState(BotFloodIt.Engine engine) {
+        FloodBoard board = new FloodBoard(ids);
+        switch (engine) {
+            case CELLS:
+                return board;
+            case BITS:
+                return new BitBoard(board);
+            default:
+                return new RegionGraph(board).createState();
+        }
+    }
+
+    private static byte[][] createIds(int size, int colorsCount, long seed) {
+        Random rnd = new Random(seed);
+        byte[][] ids = new byte[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                ids[i][j] = (byte) rnd.nextInt(colorsCount);
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,126 @@
+package main;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Проверка поиска поля на снимке: размер ячейки считается по длине
+ * сплошной светлой области. Прежний подсчёт не учитывал первый элемент
+ * области и на поле ровно boardSize * cellSize точек давал ячейку
+ * на одну точку меньше
+ * @author aNNiMON
+ */
+public class DetectionTest {
+
+    /* Палитра снимков */
+    private static final int[] PALETTE = {0xDC4A20, 0x7E9D1E, 0x605CA8, 0xF3F61D, 0x46B1E2, 0xED70A1};
+    /* Снимок окна игры: поле 14x14 из ячеек 24 точки в центре 1024x768 */
+    private static final int WIDTH = 1024, HEIGHT = 768;
+    private static final int BOARD_SIZE = 14, CELL_SIZE = 24;
+    private static final int BOARD_X = 344, BOARD_Y = 216;
+
+    @Test
+    public void cellSizeOnKnownScreenshot() {
+        BufferedImage screen = createScreenshot(BOARD_SIZE, CELL_SIZE, BOARD_X, BOARD_Y, 1);
+        ImageUtils iu = new ImageUtils(screen, BOARD_SIZE);
+        assertEquals(new Point(BOARD_X, BOARD_Y), iu.getBoardParameters());
+        assertEquals("cell size", CELL_SIZE, iu.getCellSize());
+
+        // Прежний подсчёт на тех же строках и столбцах: поле 336 точек, ячейка 23
+        int[] horizontal = new int[HEIGHT];
+        int[] vertical = new int[WIDTH];
+        new ImageUtils(screen, BOARD_SIZE).project(64, false, horizontal, vertical);
+        int[] rows = getBaselineParams(filterByMean(horizontal));
+        int[] columns = getBaselineParams(filterByMean(vertical));
+        assertEquals("baseline x", BOARD_X, columns[0]);
+        assertEquals("baseline y", BOARD_Y, rows[0]);
+        assertEquals("baseline cell size", CELL_SIZE - 1,
+                Math.max(columns[1] / BOARD_SIZE, rows[1] / BOARD_SIZE));
+    }
+
+    @Test
+    public void cellSizeMatchesDrawnBoard() {
+        int[] boardSizes = {14, 20, 26};
+        int[] cellSizes = {8, 13, 24};
+        for (int boardSize : boardSizes) {
+            for (int cellSize : cellSizes) {
+                int size = boardSize * cellSize;
+                int x = (WIDTH - size) / 3, y = (HEIGHT - size) / 2;
+                BufferedImage screen = createScreenshot(boardSize, cellSize, x, y, boardSize + cellSize);
+                ImageUtils iu = new ImageUtils(screen, boardSize);
+                String message = boardSize + "x" + cellSize;
+                assertEquals(message, new Point(x, y), iu.getBoardParameters());
+                assertEquals(message + " cell size", cellSize, iu.getCellSize());
+            }
+        }
+    }
+
+    /*
+     * Снимок окна игры: тёмный фон, поле из случайных цветов палитры
+     * и столбец кнопок справа от поля
+     */
+    private static BufferedImage createScreenshot(int boardSize, int cellSize, int x, int y, long seed) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics g = image.getGraphics();
+        g.setColor(new Color(0x202020));
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        Random rnd = new Random(seed);
+        for (int i = 0; i < boardSize; i++) {
+            for (int j = 0; j < boardSize; j++) {
+                g.setColor(new Color(PALETTE[rnd.nextInt(PALETTE.length)]));
+                g.fillRect(x + j * cellSize, y + i * cellSize, cellSize, cellSize);
+            }
+        }
+        int buttonX = x + boardSize * cellSize + 40;
+        for (int i = 0; (i < PALETTE.length) && (buttonX + 20 <= WIDTH); i++) {
+            g.setColor(new Color(PALETTE[i]));
+            g.fillRect(buttonX, y + i * 30, 20, 20);
+        }
+        g.dispose();
+        return image;
+    }
+
+    private static int[] filterByMean(int[] source) {
+        long mean = 0;
+        for (int value : source) {
+            mean += value;
+        }
+        mean = mean / source.length;
+        for (int i = 0; i < source.length; i++) {
+            source[i] = (source[i] > mean) ? 1 : 0;
+        }
+        return source;
+    }
+
+    /*
+     * Поиск самой длинной последовательности до исправления:
+     * длина увеличивалась только при совпадении с предыдущим элементом
+     */
+    private static int[] getBaselineParams(int[] source) {
+        int maxStart = 0, start = 0;
+        int maxLength = 0, length = 0;
+        for (int i = 1; i < source.length; i++) {
+            if (source[i] == 0) {
+                start = 0;
+                length = 0;
+                continue;
+            }
+            if (source[i] == source[i-1]) {
+                length++;
+                if (maxLength < length) {
+                    maxStart = start;
+                    maxLength = length;
+                }
+            } else {
+                start = i;
+            }
+        }
+        return new int[] {maxStart, maxLength};
+    }
+}
@@ -0,0 +1,219 @@
+package main;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Проверка представлений поля: клетки, граф областей и битовые маски
+ * должны заливаться одинаково, а отмена хода - возвращать состояние
+ * вместе с хешем точно к прежнему
+ * @author aNNiMON
+ */
+public class FloodStateTest {
+
+    /* Размеры полей, количество цветов и сколько полей каждого вида проверять.
+       Решение клетками медленное, поэтому последовательности сравниваются на полях поменьше */
+    private static final int[] SIZES = {1, 2, 5, 14, 26, 64};
+    private static final int[] SOLVE_SIZES = {1, 2, 5, 14, 26};
+    private static final int[] COLORS = {2, 3, 6, 8};
+    private static final int SEEDS = 4;
+    /* Сколько ходов делать и отменять подряд */
+    private static final int UNDO_DEPTH = 6;
+
+    @Test
+    public void enginesGiveSameSequences() {
+        for (int size : SOLVE_SIZES) {
+            for (int colors : COLORS) {
+                for (int seed = 0; seed < SEEDS; seed++) {
+                    int[][] table = createTable(size, colors, seed);
+                    String board = size + "x" + size + " colors=" + colors + " seed=" + seed;
+                    BotFloodIt bfi = new BotFloodIt(table, BotFloodIt.Engine.CELLS);
+                    byte[] cells = bfi.getFillSequence();
+                    assertArrayEquals(board + " REGIONS", cells,
+                            new BotFloodIt(table, BotFloodIt.Engine.REGIONS).getFillSequence());
+                    assertArrayEquals(board + " BITS", cells,
+                            new BotFloodIt(table, BotFloodIt.Engine.BITS).getFillSequence());
+                    for (FloodState state : createStates(table)) {
+                        // Номер палитры бота - порядок появления цвета, в состояниях - цвет - 1
+                        for (byte color : cells) {
+                            state.fill((byte) (bfi.getColors()[color] - 1));
+                        }
+                        assertTrue(board + " " + state.getClass().getSimpleName() + " not completed",
+                                state.isCompleted());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void enginesAgreeOnEveryMove() {
+        for (int size : SIZES) {
+            for (int colors : COLORS) {
+                int[][] table = createTable(size, colors, size * 31 + colors);
+                FloodState[] states = createStates(table);
+                Random rnd = new Random(size + colors);
+                for (int move = 0; move < 4 * size * colors && !states[0].isCompleted(); move++) {
+                    byte color = (byte) rnd.nextInt(colors);
+                    for (FloodState state : states) {
+                        state.fill(color);
+                    }
+                    String board = size + "x" + size + " colors=" + colors + " move=" + move;
+                    for (int i = 1; i < states.length; i++) {
+                        assertSameState(board + " " + states[i].getClass().getSimpleName(),
+                                states[0], states[i], colors);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void undoRestoresStateAndHash() {
+        for (int size : SIZES) {
+            for (int colors : COLORS) {
+                int[][] table = createTable(size, colors, size * 17 + colors);
+                for (FloodState state : createStates(table)) {
+                    checkUndo(state, colors, new Random(size * colors), size + "x" + size
+                            + " colors=" + colors + " " + state.getClass().getSimpleName());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void copyHasSameStateAndHash() {
+        int[][] table = createTable(26, 6, 5);
+        for (FloodState state : createStates(table)) {
+            state.fill((byte) 1);
+            state.fill((byte) 2);
+            FloodState copy = state.copy();
+            String name = state.getClass().getSimpleName();
+            assertSameState(name + " copy", state, copy, 6);
+            assertEquals(name + " copy hash", state.getHash(), copy.getHash());
+            // Ходы копии не меняют исходное состояние
+            long hash = state.getHash();
+            copy.fill((byte) 3);
+            assertEquals(name + " source hash", hash, state.getHash());
+            FloodState other = state.copy();
+            other.fill((byte) 4);
+            other.copyFrom(copy);
+            assertSameState(name + " copyFrom", copy, other, 6);
+            assertEquals(name + " copyFrom hash", copy.getHash(), other.getHash());
+        }
+    }
+
+    @Test
+    public void partialTreeRatesLikeFullTree() {
+        int depth = 4, colors = 5;
+        int[][] table = createTable(26, colors, 11);
+        int[] full = new int[(int) Math.pow(colors, depth)];
+        int[] partial = new int[full.length];
+        for (FloodState state : createStates(table)) {
+            LookaheadTree fullTree = new LookaheadTree(state, colors, depth);
+            LookaheadTree[] trees = {
+                new LookaheadTree(state, colors, depth, 2), new LookaheadTree(state, colors, depth, 3)
+            };
+            Random rnd = new Random(colors);
+            for (int move = 0; (move < 30) && !state.isCompleted(); move++) {
+                fullTree.rateFills(full);
+                for (LookaheadTree tree : trees) {
+                    tree.rateFills(partial);
+                    assertArrayEquals(state.getClass().getSimpleName() + " move " + move, full, partial);
+                }
+                byte color = (byte) rnd.nextInt(colors);
+                state.fill(color);
+                fullTree.advance(color);
+                for (LookaheadTree tree : trees) {
+                    tree.advance(color);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void everyFillIsCounted() {
+        int[][] table = createTable(14, 6, 9);
+        for (FloodState state : createStates(table)) {
+            long before = Metrics.getInstance().getFillOperations();
+            state.fill((byte) 1);
+            state.fill((byte) 1);
+            state.fill((byte) 7);
+            state.undo();
+            assertEquals(state.getClass().getSimpleName() + " fill operations",
+                    3, Metrics.getInstance().getFillOperations() - before);
+        }
+    }
+
+    /*
+     * Случайная игра: перед каждым ходом делается и отменяется
+     * серия ходов, после отмены состояние и хеш должны совпасть
+     */
+    private static void checkUndo(FloodState state, int colors, Random rnd, String name) {
+        for (int move = 0; (move < 200) && !state.isCompleted(); move++) {
+            int[] snapshot = snapshot(state, colors);
+            long hash = state.getHash();
+            int depth = 1 + rnd.nextInt(UNDO_DEPTH);
+            for (int i = 0; i < depth; i++) {
+                state.fill((byte) rnd.nextInt(colors));
+            }
+            for (int i = 0; i < depth; i++) {
+                state.undo();
+            }
+            assertArrayEquals(name + " move " + move, snapshot, snapshot(state, colors));
+            assertEquals(name + " hash after undo, move " + move, hash, state.getHash());
+            state.fill((byte) rnd.nextInt(colors));
+        }
+    }
+
+    /*
+     * Всё наблюдаемое состояние: цвет, площадь, оставшиеся цвета,
+     * завершённость и прирост каждым цветом
+     */
+    private static int[] snapshot(FloodState state, int colors) {
+        int[] out = new int[4 + colors];
+        out[0] = state.getColor();
+        out[1] = state.getFillCount();
+        out[2] = state.getColorsLeft();
+        out[3] = state.isCompleted() ? 1 : 0;
+        for (int c = 0; c < colors; c++) {
+            out[4 + c] = state.getFillGain((byte) c);
+        }
+        return out;
+    }
+
+    private static void assertSameState(String message, FloodState expected, FloodState actual, int colors) {
+        assertArrayEquals(message, snapshot(expected, colors), snapshot(actual, colors));
+    }
+
+    private static FloodState[] createStates(int[][] table) {
+        byte[][] ids = new byte[table.length][table.length];
+        for (int i = 0; i < table.length; i++) {
+            for (int j = 0; j < table.length; j++) {
+                ids[i][j] = (byte) (table[i][j] - 1);
+            }
+        }
+        FloodBoard board = new FloodBoard(ids);
+        return new FloodState[] {
+            new FloodBoard(board), new RegionGraph(board).createState(), new BitBoard(board)
+        };
+    }
+
+    /*
+     * Случайное поле из цветов 1..colorsCount
+     */
+    private static int[][] createTable(int size, int colorsCount, long seed) {
+        Random rnd = new Random(seed);
+        int[][] table = new int[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                table[i][j] = rnd.nextInt(colorsCount) + 1;
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,176 @@
+package main;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Проверка записи игр: каждое поле GameRecord после записи и чтения
+ * совпадает с исходным, а оборванная последняя запись пропускается
+ * без ошибки, как после аварийного завершения сессии
+ * @author aNNiMON
+ */
+public class GameRecordTest {
+
+    /* Палитра снимков */
+    private static final int[] PALETTE = {0xDC4A20, 0x7E9D1E, 0x605CA8, 0xF3F61D, 0x46B1E2, 0xED70A1};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordSurvivesWriteAndRead() throws IOException {
+        GameRecord[] records = {createRecord(14, 24, 1), createRecord(5, 9, 2)};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (GameRecord record : records) {
+            record.write(out);
+        }
+        out.close();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (GameRecord record : records) {
+            assertSameRecord(record, GameRecord.read(in));
+        }
+        assertNull("records after the last one", GameRecord.read(in));
+    }
+
+    @Test
+    public void truncatedLastRecordIsSkipped() throws IOException {
+        GameRecord first = createRecord(14, 24, 3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        first.write(out);
+        int firstLength = bytes.size();
+        createRecord(14, 24, 4).write(out);
+        out.close();
+        byte[] data = bytes.toByteArray();
+        // Обрыв сразу после маркера, посреди снимка и перед последним байтом
+        int[] cuts = {firstLength + 1, (firstLength + data.length) / 2, data.length - 1};
+        for (int cut : cuts) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Arrays.copyOf(data, cut)));
+            assertSameRecord(first, GameRecord.read(in));
+            assertNull("record cut at " + cut, GameRecord.read(in));
+        }
+    }
+
+    @Test
+    public void sessionFileSurvivesWriteAndRead() throws IOException {
+        File file = folder.newFile("session.rec");
+        GameRecord[] records = {createRecord(14, 24, 5), createRecord(26, 12, 6)};
+        SessionRecorder recorder = new SessionRecorder(file);
+        for (GameRecord record : records) {
+            recorder.write(record);
+        }
+        recorder.close();
+        assertEquals(records.length, recorder.getRecords());
+        DataInputStream in = SessionRecorder.open(file);
+        try {
+            for (GameRecord record : records) {
+                assertSameRecord(record, GameRecord.read(in));
+            }
+            assertNull(GameRecord.read(in));
+        } finally {
+            in.close();
+        }
+
+        // Сессия прервана во время записи: файл обрезан, сжатый поток не закончен
+        byte[] data = Files.readAllBytes(file.toPath());
+        File truncated = folder.newFile("truncated.rec");
+        FileOutputStream out = new FileOutputStream(truncated);
+        try {
+            out.write(data, 0, data.length - 40);
+        } finally {
+            out.close();
+        }
+        in = SessionRecorder.open(truncated);
+        try {
+            assertSameRecord(records[0], GameRecord.read(in));
+            assertNull(GameRecord.read(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void assertSameRecord(GameRecord expected, GameRecord actual) {
+        assertNotNull("record", actual);
+        assertEquals("boardSize", expected.getBoardSize(), actual.getBoardSize());
+        assertEquals("cellSize", expected.getCellSize(), actual.getCellSize());
+        assertEquals("board", expected.getBoard(), actual.getBoard());
+        assertArrayEquals("palette", expected.getPalette(), actual.getPalette());
+        assertArrayEquals("ids", expected.getIds(), actual.getIds());
+        assertEquals("solver", expected.getSolver(), actual.getSolver());
+        assertEquals("solveTime", expected.getSolveTime(), actual.getSolveTime());
+        assertArrayEquals("sequence", expected.getSequence(), actual.getSequence());
+        assertEquals("moves", expected.getMoves(), actual.getMoves());
+        assertEquals("resyncs", expected.getResyncs(), actual.getResyncs());
+        assertEquals("solved", expected.isSolved(), actual.isSolved());
+        for (Metrics.Stage stage : Metrics.Stage.values()) {
+            assertEquals("timing " + stage, expected.getTiming(stage), actual.getTiming(stage));
+        }
+        ImageUtils expectedImage = expected.createImageUtils();
+        ImageUtils actualImage = actual.createImageUtils();
+        assertEquals("boardPoint", expectedImage.getBoardPoint(), actualImage.getBoardPoint());
+        assertArrayEquals("image", getPixels(expectedImage.getImage()), getPixels(actualImage.getImage()));
+    }
+
+    /*
+     * Запись игры по синтетическому снимку: поле с отступом
+     * от края снимка, половина палитры, случайные ходы и время этапов
+     */
+    private static GameRecord createRecord(int boardSize, int cellSize, long seed) {
+        Random rnd = new Random(seed);
+        int colorsCount = 3 + rnd.nextInt(PALETTE.length - 2);
+        int[][] table = new int[boardSize][boardSize];
+        for (int[] row : table) {
+            for (int j = 0; j < boardSize; j++) {
+                row[j] = PALETTE[rnd.nextInt(colorsCount)];
+            }
+        }
+        int x = 7 + rnd.nextInt(20), y = 5 + rnd.nextInt(20);
+        int size = boardSize * cellSize;
+        BufferedImage image = new BufferedImage(size + x + 13, size + y + 11, BufferedImage.TYPE_INT_RGB);
+        for (int py = 0; py < image.getHeight(); py++) {
+            for (int px = 0; px < image.getWidth(); px++) {
+                int row = (py - y) / cellSize, column = (px - x) / cellSize;
+                boolean inside = (px >= x) && (py >= y) && (row < boardSize) && (column < boardSize);
+                image.setRGB(px, py, inside ? table[row][column] : rnd.nextInt(0x1000000));
+            }
+        }
+        int[] palette = new int[PALETTE.length];
+        Arrays.fill(palette, -1);
+        System.arraycopy(PALETTE, 0, palette, 0, colorsCount);
+        byte[] sequence = new byte[1 + rnd.nextInt(40)];
+        for (int i = 0; i < sequence.length; i++) {
+            sequence[i] = (byte) rnd.nextInt(colorsCount);
+        }
+        long[] timings = new long[Metrics.Stage.values().length];
+        for (int i = 0; i < timings.length; i++) {
+            timings[i] = rnd.nextLong() & Long.MAX_VALUE;
+        }
+        ImageUtils iu = new ImageUtils(image, boardSize, cellSize, x, y);
+        return new GameRecord(iu, new Point(100 + x, -20 + y), palette, table,
+                (seed % 2 == 0) ? SessionReplay.ANYTIME : "GREEDY", rnd.nextInt(5000), sequence,
+                sequence.length + rnd.nextInt(5), rnd.nextInt(3), rnd.nextBoolean(), timings);
+    }
+
+    private static int[] getPixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+}
@@ -0,0 +1,120 @@
+package main;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Проверка подсчёта белых точек: скалярный проход, полосы в пуле потоков
+ * и Vector API должны давать одинаковые суммы по строкам и столбцам.
+ * Образец - изображение TYPE_INT_BGR, которое читается через getRGB.
+ * Ширины нечётные, чтобы остаток строки не делился на вектор,
+ * а вырезанные изображения имеют ненулевой сдвиг растра
+ * @author aNNiMON
+ */
+public class ProjectionTest {
+
+    /* Размеры изображений: последнее больше полосы и делится на несколько */
+    private static final int[][] SIZES = {{1, 1}, {7, 5}, {33, 17}, {333, 101}, {1031, 611}};
+    /* Форматы, которые читаются прямо из растра */
+    private static final int[] TYPES = {
+        BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR
+    };
+    /* Пороги яркости и доля светлых точек, чтобы проверить оба варианта фона */
+    private static final int[] VALUES = {64, 128, 200};
+    private static final int[] LIGHT_PERCENTS = {10, 90};
+
+    @Test
+    public void stripesMatchScalar() {
+        checkProjections(false);
+    }
+
+    @Test
+    public void vectorMatchesScalar() {
+        assumeTrue(ImageUtils.isVectorAvailable());
+        checkProjections(true);
+    }
+
+    /*
+     * Все форматы, размеры и сдвиги растра: проход по строкам
+     * и полосы сравниваются с образцом
+     */
+    private static void checkProjections(boolean vector) {
+        for (int[] size : SIZES) {
+            for (int percent : LIGHT_PERCENTS) {
+                int[] rgb = createPixels(size[0], size[1], percent, size[0] * 7 + percent);
+                for (int value : VALUES) {
+                    String name = size[0] + "x" + size[1] + " light=" + percent + "% value=" + value;
+                    int[][] expected = project(createImage(BufferedImage.TYPE_INT_BGR, size[0], size[1], rgb, false),
+                            value, false, false);
+                    for (int type : TYPES) {
+                        for (boolean translated : new boolean[] {false, true}) {
+                            BufferedImage image = createImage(type, size[0], size[1], rgb, translated);
+                            for (boolean stripes : new boolean[] {false, true}) {
+                                String message = name + " type=" + type + " translated=" + translated
+                                        + " stripes=" + stripes + " vector=" + vector;
+                                int[][] actual = project(image, value, stripes, vector);
+                                assertArrayEquals(message + " rows", expected[0], actual[0]);
+                                assertArrayEquals(message + " columns", expected[1], actual[1]);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static int[][] project(BufferedImage image, int value, boolean stripes, boolean vector) {
+        ImageUtils iu = new ImageUtils(image, 14);
+        iu.setVector(vector);
+        int[] horizontal = new int[image.getHeight()];
+        int[] vertical = new int[image.getWidth()];
+        iu.project(value, stripes, horizontal, vertical);
+        return new int[][] {horizontal, vertical};
+    }
+
+    /*
+     * Изображение нужного формата с пикселями rgb. Вырезанное изображение
+     * берётся из середины большего и начинается не с начала растра
+     */
+    private static BufferedImage createImage(int type, int w, int h, int[] rgb, boolean translated) {
+        if (!translated) {
+            BufferedImage image = new BufferedImage(w, h, type);
+            image.setRGB(0, 0, w, h, rgb, 0, w);
+            return image;
+        }
+        BufferedImage parent = new BufferedImage(w + 9, h + 11, type);
+        BufferedImage image = parent.getSubimage(5, 3, w, h);
+        image.setRGB(0, 0, w, h, rgb, 0, w);
+        return image;
+    }
+
+    /*
+     * Случайные пиксели: percent процентов светлых, остальные тёмные,
+     * и яркость часто около порогов, чтобы проверить границу
+     */
+    private static int[] createPixels(int w, int h, int percent, long seed) {
+        Random rnd = new Random(seed);
+        int[] rgb = new int[w * h];
+        for (int i = 0; i < rgb.length; i++) {
+            int base;
+            if (rnd.nextInt(4) == 0) {
+                base = VALUES[rnd.nextInt(VALUES.length)] + rnd.nextInt(3) - 1;
+            } else {
+                base = (rnd.nextInt(100) < percent) ? 150 + rnd.nextInt(106) : rnd.nextInt(100);
+            }
+            int r = clamp(base + rnd.nextInt(5) - 2);
+            int g = clamp(base + rnd.nextInt(5) - 2);
+            int b = clamp(3 * base - r - g);
+            rgb[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+        return rgb;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
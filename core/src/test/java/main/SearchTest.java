@@ -0,0 +1,78 @@
+package main;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Проверка способов просчёта, которые должны выбирать те же ходы,
+ * что и полный перебор: перебор с отсечениями и перебор по потокам.
+ * Поля не больше 40x40, на них дерево перебора помещается в память
+ * на полную глубину
+ * @author aNNiMON
+ */
+public class SearchTest {
+
+    /* Размеры полей, количество цветов и сколько полей каждого вида проверять */
+    private static final int[] SIZES = {1, 2, 5, 14, 26, 40};
+    private static final int[] COLORS = {2, 3, 6, 8};
+    private static final int SEEDS = 3;
+    /* Количество потоков параллельного перебора, больше одного даже на одном ядре */
+    private static final int[] PARALLELISM = {1, 3};
+
+    @Test
+    public void prunedMatchesGreedy() {
+        for (int size : SIZES) {
+            for (int colors : COLORS) {
+                for (int seed = 0; seed < SEEDS; seed++) {
+                    int[][] table = createTable(size, colors, seed);
+                    assertArrayEquals(name(size, colors, seed) + " PRUNED",
+                            solve(table, BotFloodIt.Search.GREEDY, 1),
+                            solve(table, BotFloodIt.Search.PRUNED, 1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parallelMatchesGreedy() {
+        for (int size : SIZES) {
+            for (int colors : COLORS) {
+                for (int seed = 0; seed < SEEDS; seed++) {
+                    int[][] table = createTable(size, colors, seed);
+                    byte[] greedy = solve(table, BotFloodIt.Search.GREEDY, 1);
+                    for (int threads : PARALLELISM) {
+                        assertArrayEquals(name(size, colors, seed) + " PARALLEL threads=" + threads,
+                                greedy, solve(table, BotFloodIt.Search.PARALLEL, threads));
+                    }
+                }
+            }
+        }
+    }
+
+    private static byte[] solve(int[][] table, BotFloodIt.Search search, int parallelism) {
+        BotFloodIt bfi = new BotFloodIt(table);
+        bfi.setSearch(search);
+        bfi.setParallelism(parallelism);
+        return bfi.getFillSequence();
+    }
+
+    private static String name(int size, int colors, int seed) {
+        return size + "x" + size + " colors=" + colors + " seed=" + seed;
+    }
+
+    /*
+     * Случайное поле из цветов 1..colorsCount
+     */
+    private static int[][] createTable(int size, int colorsCount, long seed) {
+        Random rnd = new Random(seed * 1000 + size * 31 + colorsCount);
+        int[][] table = new int[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                table[i][j] = rnd.nextInt(colorsCount) + 1;
+            }
+        }
+        return table;
+    }
+}
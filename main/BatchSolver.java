@@ -0,0 +1,290 @@
+package main;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.imageio.ImageIO;
+
+/**
+ * Пакетное решение полей без графического интерфейса.
+ * Принимает каталог со снимками экрана (PNG) и текстовыми дампами полей,
+ * решает их на пуле потоков и выводит по строке JSON на каждое поле:
+ * последовательность, количество ходов, палитру (цвет каждого номера
+ * в последовательности) и время каждого этапа.
+ * Запуск: java main.BatchSolver [-threads N] [-size N] [-search NAME] [-time MS] каталог
+ * @author aNNiMON
+ */
+public class BatchSolver {
+
+    /* Размер поля на снимках по умолчанию */
+    private static final int DEFAULT_BOARD_SIZE = 14;
+
+    /* Размерность поля на снимках экрана */
+    private final int boardSize;
+    /* Способ просчёта ходов */
+    private final BotFloodIt.Search search;
+    /* Время на поиск с ограничением, мс; 0 - без ограничения */
+    private final long solveTime;
+
+    /**
+     * @param boardSize размерность поля на снимках экрана
+     * @param search способ просчёта ходов
+     * @param solveTime время на поиск, мс; 0 - обычный просчёт способом search
+     */
+    public BatchSolver(int boardSize, BotFloodIt.Search search, long solveTime) {
+        this.boardSize = boardSize;
+        this.search = search;
+        this.solveTime = solveTime;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        int threads = Runtime.getRuntime().availableProcessors();
+        int boardSize = DEFAULT_BOARD_SIZE;
+        BotFloodIt.Search search = BotFloodIt.Search.GREEDY;
+        long solveTime = 0;
+        File dir = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-size")) {
+                    boardSize = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-search")) {
+                    search = BotFloodIt.Search.valueOf(args[++i].toUpperCase(Locale.US));
+                } else if (args[i].equals("-time")) {
+                    solveTime = Long.parseLong(args[++i]);
+                } else {
+                    dir = new File(args[i]);
+                }
+            }
+        } catch (RuntimeException ex) {
+            dir = null;
+        }
+        if ((dir == null) || !dir.isDirectory()) {
+            System.err.println("Usage: java main.BatchSolver [-threads N] [-size N]"
+                    + " [-search GREEDY|PRUNED|PARALLEL|OPTIMAL|BEAM] [-time MS] directory");
+            System.exit(2);
+        }
+        new BatchSolver(boardSize, search, solveTime).solveAll(dir, threads, System.out);
+    }
+
+    /**
+     * Решить все поля из каталога. Строки выводятся по мере готовности
+     * @param dir каталог с файлами *.png и *.txt
+     * @param threads количество потоков
+     * @param out куда выводить результаты
+     * @throws InterruptedException если ожидание было прервано
+     */
+    public void solveAll(File dir, int threads, PrintStream out) throws InterruptedException {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        Arrays.sort(files);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CompletionService<String> results = new ExecutorCompletionService<String>(pool);
+            int tasks = 0;
+            for (final File file : files) {
+                if (!isBoardFile(file)) continue;
+                results.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return solve(file);
+                    }
+                });
+                tasks++;
+            }
+            for (int i = 0; i < tasks; i++) {
+                try {
+                    out.println(results.take().get());
+                } catch (ExecutionException ex) {
+                    out.println("{\"error\":" + quote(String.valueOf(ex.getCause())) + "}");
+                }
+                out.flush();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Решить одно поле
+     * @param file снимок экрана или текстовый дамп
+     * @return строка JSON с результатом или ошибкой
+     */
+    public String solve(File file) {
+        StringBuilder timings = new StringBuilder();
+        try {
+            long start = System.nanoTime();
+            int[][] table;
+            if (isImage(file)) {
+                BufferedImage image = ImageIO.read(file);
+                if (image == null) throw new IOException("unsupported image");
+                start = addTiming(timings, "read", start);
+                ImageUtils detector = new ImageUtils(image, boardSize);
+                Point board = detector.getBoardParameters();
+                start = addTiming(timings, "detect", start);
+                ImageUtils iu = new ImageUtils(image, boardSize, detector.getCellSize(), board.x, board.y);
+                table = iu.getBoardColors();
+                start = addTiming(timings, "sample", start);
+            } else {
+                table = readTable(file);
+                start = addTiming(timings, "read", start);
+            }
+            BotFloodIt bfi = new BotFloodIt(table);
+            bfi.setSearch(search);
+            byte[] sequence;
+            if (solveTime > 0) {
+                sequence = bfi.getFillSequence(System.currentTimeMillis() + solveTime, null);
+            } else {
+                sequence = bfi.getFillSequence();
+            }
+            addTiming(timings, "solve", start);
+
+            StringBuilder json = new StringBuilder();
+            json.append("{\"file\":").append(quote(file.getName()));
+            json.append(",\"moves\":").append(sequence.length);
+            json.append(",\"sequence\":[");
+            for (int i = 0; i < sequence.length; i++) {
+                if (i > 0) json.append(',');
+                json.append(sequence[i]);
+            }
+            json.append("],\"palette\":[");
+            int[] colors = bfi.getColors();
+            for (int i = 0; i < colors.length; i++) {
+                if (colors[i] == -1) break;
+                if (i > 0) json.append(',');
+                json.append(String.format("\"#%06x\"", colors[i] & 0xFFFFFF));
+            }
+            json.append("],\"timings\":{").append(timings).append("}}");
+            return json.toString();
+        } catch (Exception ex) {
+            return "{\"file\":" + quote(file.getName())
+                    + ",\"error\":" + quote(String.valueOf(ex)) + "}";
+        }
+    }
+
+    /**
+     * Прочитать текстовый дамп поля. Каждая непустая строка - строка поля.
+     * Значения разделяются пробелами (числа, в том числе 0x... и #...),
+     * либо без разделителей - по символу на клетку (0-9, a-z)
+     * @param file текстовый файл
+     * @return массив цветов
+     * @throws IOException ошибка чтения или формата
+     */
+    public static int[][] readTable(File file) throws IOException {
+        ArrayList<int[]> rows = new ArrayList<int[]>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                rows.add(parseRow(line));
+            }
+        } finally {
+            reader.close();
+        }
+        int size = rows.size();
+        if (size == 0) throw new IOException("empty board");
+        int[][] table = new int[size][];
+        for (int i = 0; i < size; i++) {
+            table[i] = rows.get(i);
+            if (table[i].length != size) {
+                throw new IOException("board must be square, row " + (i + 1) + " has " + table[i].length + " cells");
+            }
+        }
+        return table;
+    }
+
+    /*
+     * Разбор одной строки дампа
+     */
+    private static int[] parseRow(String line) throws IOException {
+        String[] tokens = line.split("[\\s,;]+");
+        if (tokens.length > 1) {
+            int[] row = new int[tokens.length];
+            for (int i = 0; i < tokens.length; i++) {
+                row[i] = parseValue(tokens[i]);
+            }
+            return row;
+        }
+        int[] row = new int[line.length()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = Character.digit(line.charAt(i), Character.MAX_RADIX);
+            if (row[i] == -1) throw new IOException("bad cell '" + line.charAt(i) + "'");
+        }
+        return row;
+    }
+
+    /*
+     * Разбор значения: десятичное, 0x... или #...
+     */
+    private static int parseValue(String token) throws IOException {
+        try {
+            if (token.startsWith("#")) return Integer.parseInt(token.substring(1), 16);
+            if (token.startsWith("0x") || token.startsWith("0X")) return Integer.parseInt(token.substring(2), 16);
+            return Integer.parseInt(token);
+        } catch (NumberFormatException ex) {
+            throw new IOException("bad cell '" + token + "'");
+        }
+    }
+
+    /*
+     * Добавить время этапа и вернуть начало следующего
+     */
+    private static long addTiming(StringBuilder timings, String stage, long start) {
+        long now = System.nanoTime();
+        if (timings.length() > 0) timings.append(',');
+        timings.append('"').append(stage).append("Ms\":")
+               .append(String.format(Locale.US, "%.3f", (now - start) / 1e6));
+        return now;
+    }
+
+    private static boolean isBoardFile(File file) {
+        if (!file.isFile()) return false;
+        return isImage(file) || file.getName().toLowerCase(Locale.US).endsWith(".txt");
+    }
+
+    private static boolean isImage(File file) {
+        return file.getName().toLowerCase(Locale.US).endsWith(".png");
+    }
+
+    /*
+     * Строка в кавычках JSON
+     */
+    static String quote(String text) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            switch (ch) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (ch < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        sb.append(ch);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,233 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Лучевой поиск: на каждом ходе сохраняются width лучших
+ * частичных последовательностей. Оценка - площадь заливки,
+ * при равенстве лучше та, после которой осталось меньше цветов.
+ * Память ограничена шириной луча и размером поля.
+ * @author aNNiMON
+ */
+public class BeamSearch {
+
+    /* Ширина луча */
+    private final int width;
+    /* Количество цветов */
+    private final int colorsCount;
+    /* Текущий и следующий лучи */
+    private Entry[] beam, next;
+    private int beamSize, nextSize;
+    /* Хэши состояний следующего луча */
+    private final LongSet hashes;
+    /* Черновик для оценки хода */
+    private Entry candidate;
+    /* Образец для создания новых записей */
+    private final FloodState prototype;
+    /* Количество просчитанных узлов */
+    private long expandedNodes;
+
+    /**
+     * @param state состояние, по образцу которого создаются рабочие копии
+     * @param colorsCount количество цветов в игре
+     * @param width ширина луча
+     */
+    public BeamSearch(FloodState state, int colorsCount, int width) {
+        this.width = Math.max(1, width);
+        this.colorsCount = colorsCount;
+        prototype = state;
+        // Записи создаются по мере заполнения луча
+        beam = new Entry[this.width];
+        next = new Entry[this.width];
+        beam[0] = new Entry(state.copy());
+        candidate = new Entry(state.copy());
+        hashes = new LongSet(this.width);
+    }
+
+    /**
+     * Найти последовательность ходов до полной заливки
+     * @param start начальное состояние, не изменяется
+     * @return массив с идентификаторами цветов для заливки
+     */
+    public byte[] solve(FloodState start) {
+        return solve(start, 0, false);
+    }
+
+    /**
+     * Найти последовательность ходов до полной заливки за отведённое время
+     * @param start начальное состояние, не изменяется
+     * @param deadline граница времени по System.nanoTime()
+     * @return массив с идентификаторами цветов или null - если время вышло
+     */
+    public byte[] solve(FloodState start, long deadline) {
+        return solve(start, deadline, true);
+    }
+
+    private byte[] solve(FloodState start, long deadline, boolean limited) {
+        expandedNodes = 0;
+        beam[0].state.copyFrom(start);
+        beam[0].length = 0;
+        beamSize = 1;
+        while (true) {
+            for (int i = 0; i < beamSize; i++) {
+                if (beam[i].state.isCompleted()) return beam[i].getMoves();
+            }
+            nextSize = 0;
+            hashes.clear();
+            for (int i = 0; i < beamSize; i++) {
+                if (limited && (System.nanoTime() - deadline > 0)) return null;
+                Entry parent = beam[i];
+                for (int c = 0; c < colorsCount; c++) {
+                    byte color = (byte) c;
+                    if (parent.state.getFillGain(color) == 0) continue;
+                    expandedNodes++;
+                    candidate.state.copyFrom(parent.state);
+                    candidate.state.fill(color);
+                    candidate.setMoves(parent, color);
+                    candidate.area = candidate.state.getFillCount();
+                    candidate.colorsLeft = candidate.state.getColorsLeft();
+                    candidate.hash = candidate.state.getHash();
+                    offer();
+                }
+            }
+            Entry[] swap = beam;
+            beam = next;
+            next = swap;
+            beamSize = nextSize;
+        }
+    }
+
+    /**
+     * Количество узлов, просчитанных при последнем поиске
+     */
+    public long getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /*
+     * Добавить кандидата в следующий луч, если он лучше худшего
+     */
+    private void offer() {
+        // Одинаковые состояния, полученные разным порядком ходов, не дублируем
+        if (hashes.contains(candidate.hash)) return;
+        int pos;
+        if (nextSize < width) {
+            pos = nextSize++;
+        } else {
+            if (!candidate.isBetter(next[nextSize - 1])) return;
+            pos = nextSize - 1;
+            hashes.remove(next[pos].hash);
+        }
+        hashes.add(candidate.hash);
+        // Меняем местами черновик и вытесняемую запись, затем сортируем вставкой
+        Entry evicted = next[pos];
+        next[pos] = candidate;
+        candidate = (evicted != null) ? evicted : new Entry(prototype.copy());
+        while ((pos > 0) && next[pos].isBetter(next[pos - 1])) {
+            Entry tmp = next[pos];
+            next[pos] = next[pos - 1];
+            next[pos - 1] = tmp;
+            pos--;
+        }
+    }
+
+    /*
+     * Частичная последовательность ходов и её состояние
+     */
+    private static class Entry {
+
+        final FloodState state;
+        /* Ходов не больше, чем клеток поля, поэтому массив растёт ограниченно */
+        byte[] moves;
+        int length;
+        int area, colorsLeft;
+        long hash;
+
+        Entry(FloodState state) {
+            this.state = state;
+            moves = new byte[64];
+            length = 0;
+        }
+
+        void setMoves(Entry parent, byte color) {
+            if (moves.length <= parent.length) {
+                moves = new byte[parent.moves.length * 2];
+            }
+            System.arraycopy(parent.moves, 0, moves, 0, parent.length);
+            moves[parent.length] = color;
+            length = parent.length + 1;
+        }
+
+        boolean isBetter(Entry other) {
+            if (area != other.area) return area > other.area;
+            return colorsLeft < other.colorsLeft;
+        }
+
+        byte[] getMoves() {
+            byte[] out = new byte[length];
+            System.arraycopy(moves, 0, out, 0, length);
+            return out;
+        }
+    }
+
+    /*
+     * Множество хэшей с открытой адресацией и линейным пробированием,
+     * без упаковки long в объекты
+     */
+    private static class LongSet {
+
+        private final long[] keys;
+        private final boolean[] used;
+        private final int mask;
+
+        LongSet(int capacity) {
+            // Заполнение не больше половины
+            int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) * 2;
+            keys = new long[size];
+            used = new boolean[size];
+            mask = size - 1;
+        }
+
+        void clear() {
+            Arrays.fill(used, false);
+        }
+
+        boolean contains(long key) {
+            for (int i = slot(key); used[i]; i = (i + 1) & mask) {
+                if (keys[i] == key) return true;
+            }
+            return false;
+        }
+
+        void add(long key) {
+            int i = slot(key);
+            while (used[i]) {
+                if (keys[i] == key) return;
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            used[i] = true;
+        }
+
+        void remove(long key) {
+            int i = slot(key);
+            while (used[i] && (keys[i] != key)) {
+                i = (i + 1) & mask;
+            }
+            if (!used[i]) return;
+            // Сдвигаем назад ключи, которые без удалённого не нашлись бы
+            for (int j = (i + 1) & mask; used[j]; j = (j + 1) & mask) {
+                int home = slot(keys[j]);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    i = j;
+                }
+            }
+            used[i] = false;
+        }
+
+        private int slot(long key) {
+            return (int) (key ^ (key >>> 32)) & mask;
+        }
+    }
+}
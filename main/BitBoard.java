@@ -0,0 +1,270 @@
+package main;
+
+/**
+ * Битовое представление поля шириной до 64 клеток.
+ * Каждая строка - одно слово long: для каждого цвета хранится своя маска,
+ * а заливка выполняется расширением залитой маски сдвигами и AND
+ * с маской нового цвета.
+ * @author aNNiMON
+ */
+public class BitBoard implements FloodState {
+
+    /* Максимальная ширина поля */
+    public static final int MAX_WIDTH = 64;
+
+    /* Размеры поля */
+    private final int width, height;
+    /* Маски клеток каждого цвета, общие для всех копий */
+    private final long[][] planes;
+    /* Маска залитой области */
+    private final long[] flooded;
+    /* Маска для подсчёта прироста заливки */
+    private final long[] scratch;
+    /* Стек строк для расширения маски */
+    private final int[] rows;
+    private final boolean[] queued;
+    /* Строки, уже записанные в журнал текущего хода */
+    private final boolean[] journaled;
+    /* Журнал отмены: изменённые строки с прежними масками и заголовок хода */
+    private long[] journal;
+    private int journalSize;
+    /* Вести ли журнал при расширении маски */
+    private boolean journaling;
+    /* Текущий цвет залитой области */
+    private byte color;
+    /* Количество залитых клеток */
+    private int fillCount;
+
+    /**
+     * Проверить, можно ли представить поле битовыми масками
+     * @param board игровое поле
+     * @return true - ширина поля не превышает MAX_WIDTH
+     */
+    public static boolean fits(FloodBoard board) {
+        return board.getWidth() <= MAX_WIDTH;
+    }
+
+    /**
+     * Создать битовое представление поля
+     * @param board игровое поле
+     */
+    public BitBoard(FloodBoard board) {
+        width = board.getWidth();
+        height = board.getHeight();
+        int maxColor = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                maxColor = Math.max(maxColor, board.getCell(x, y));
+            }
+        }
+        planes = new long[maxColor + 1][height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                planes[board.getCell(x, y)][y] |= 1L << x;
+            }
+        }
+        flooded = new long[height];
+        scratch = new long[height];
+        rows = new int[height];
+        queued = new boolean[height];
+        journaled = new boolean[height];
+        journal = new long[64];
+        journalSize = 0;
+        journaling = false;
+        color = board.getCell(0, 0);
+        flooded[0] = 1L;
+        fillCount = expand(flooded, planes[color]);
+    }
+
+    private BitBoard(BitBoard board) {
+        width = board.width;
+        height = board.height;
+        planes = board.planes;
+        flooded = new long[height];
+        scratch = new long[height];
+        rows = new int[height];
+        queued = new boolean[height];
+        journaled = new boolean[height];
+        // Журнал одного хода: по два значения на строку и заголовок
+        journal = new long[Math.max(64, 2 * height + 3)];
+        journaling = false;
+        copyFrom(board);
+    }
+
+    @Override
+    public byte getColor() {
+        return color;
+    }
+
+    @Override
+    public void fill(byte color) {
+        Metrics.countFill();
+        int start = journalSize;
+        byte oldColor = this.color;
+        int oldCount = fillCount;
+        if ((this.color != color) && (color < planes.length)) {
+            journaling = true;
+            fillCount = expand(flooded, planes[color]);
+            journaling = false;
+            for (int i = start; i < journalSize; i += 2) {
+                journaled[(int) journal[i]] = false;
+            }
+        }
+        this.color = color;
+        record((journalSize - start) / 2);
+        record(oldColor);
+        record(oldCount);
+    }
+
+    @Override
+    public void undo() {
+        fillCount = (int) journal[--journalSize];
+        color = (byte) journal[--journalSize];
+        int rowsChanged = (int) journal[--journalSize];
+        for (int i = 0; i < rowsChanged; i++) {
+            long row = journal[--journalSize];
+            int y = (int) journal[--journalSize];
+            flooded[y] = row;
+        }
+    }
+
+    @Override
+    public int getFillCount() {
+        return fillCount;
+    }
+
+    @Override
+    public int getFillGain(byte color) {
+        if ((this.color == color) || (color >= planes.length)) return 0;
+        System.arraycopy(flooded, 0, scratch, 0, height);
+        return expand(scratch, planes[color]) - fillCount;
+    }
+
+    @Override
+    public int getColorsLeft() {
+        int left = 0;
+        for (int c = 0; c < planes.length; c++) {
+            long[] plane = planes[c];
+            for (int y = 0; y < height; y++) {
+                if ((plane[y] & ~flooded[y]) != 0) {
+                    left++;
+                    break;
+                }
+            }
+        }
+        return left;
+    }
+
+    @Override
+    public boolean isCompleted() {
+        return fillCount == width * height;
+    }
+
+    @Override
+    public long getHash() {
+        long hash = color * 0x9E3779B97F4A7C15L;
+        for (int y = 0; y < height; y++) {
+            hash = (hash ^ flooded[y]) * 0xC2B2AE3D27D4EB4FL;
+            hash ^= hash >>> 29;
+        }
+        return hash;
+    }
+
+    @Override
+    public FloodState copy() {
+        return new BitBoard(this);
+    }
+
+    @Override
+    public long getCopyBytes() {
+        // Маски залитой области и прироста, стек строк, два признака
+        // на строку и журнал одного хода. Маски цветов общие
+        return 22L * height + 8L * Math.max(64, 2 * height + 3);
+    }
+
+    @Override
+    public void copyFrom(FloodState state) {
+        BitBoard other = (BitBoard) state;
+        System.arraycopy(other.flooded, 0, flooded, 0, height);
+        color = other.color;
+        fillCount = other.fillCount;
+        journalSize = 0;
+    }
+
+    /*
+     * Расширять маску fill по клеткам plane, пока она растёт.
+     * Поскольку маска только растёт, fill | plane остаётся равной
+     * исходной залитой области, объединённой с маской цвета.
+     * Обрабатываются только строки, соседние с изменившимися.
+     * Возвращает количество клеток в итоговой маске.
+     */
+    private int expand(long[] fill, long[] plane) {
+        int count = 0;
+        int top = 0;
+        for (int y = 0; y < height; y++) {
+            long row = fill[y];
+            count += Long.bitCount(row);
+            long around = (row << 1) | (row >>> 1);
+            if (y > 0) around |= fill[y - 1];
+            if (y < height - 1) around |= fill[y + 1];
+            if ((around & plane[y] & ~row) != 0) {
+                rows[top++] = y;
+                queued[y] = true;
+            }
+        }
+        while (top > 0) {
+            int y = rows[--top];
+            queued[y] = false;
+            long row = fill[y];
+            long grow = expandRow(fill, plane, y);
+            if (grow == row) continue;
+            count += Long.bitCount(grow) - Long.bitCount(row);
+            if ((y > 0) && !queued[y - 1]) {
+                rows[top++] = y - 1;
+                queued[y - 1] = true;
+            }
+            if ((y < height - 1) && !queued[y + 1]) {
+                rows[top++] = y + 1;
+                queued[y + 1] = true;
+            }
+        }
+        return count;
+    }
+
+    /*
+     * Расширить строку y из соседних строк и вдоль самой строки
+     */
+    private long expandRow(long[] fill, long[] plane, int y) {
+        long row = fill[y];
+        long target = row | plane[y];
+        long grow = row;
+        if (y > 0) grow |= fill[y - 1];
+        if (y < height - 1) grow |= fill[y + 1];
+        grow &= target;
+        long prev;
+        do {
+            prev = grow;
+            grow |= ((grow << 1) | (grow >>> 1)) & target;
+        } while (grow != prev);
+        // Строка может расти несколько раз за ход, для отмены нужна первая маска
+        if (journaling && (grow != row) && !journaled[y]) {
+            journaled[y] = true;
+            record(y);
+            record(row);
+        }
+        fill[y] = grow;
+        return grow;
+    }
+
+    /*
+     * Добавить значение в журнал отмены
+     */
+    private void record(long value) {
+        if (journalSize == journal.length) {
+            long[] newJournal = new long[journal.length * 2];
+            System.arraycopy(journal, 0, newJournal, 0, journalSize);
+            journal = newJournal;
+        }
+        journal[journalSize++] = value;
+    }
+}
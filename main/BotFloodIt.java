@@ -1,6 +1,7 @@
 package main;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Класс логики бота.
@@ -8,27 +9,197 @@ import java.util.ArrayList;
  */
 public class BotFloodIt {
     
-    /* Количество цветов в игре */
-    private static final int MAX_COLORS = 6;
+    /**
+     * Представление поля, над которым ведётся просчёт
+     */
+    public enum Engine {
+        /* Отдельные клетки */
+        CELLS,
+        /* Граф связных одноцветных областей */
+        REGIONS,
+        /* Битовые маски, для полей шириной до 64 клеток */
+        BITS,
+        /* Битовые маски, если поле помещается, иначе граф областей */
+        AUTO
+    }
+    
+    /**
+     * Способ просчёта ходов
+     */
+    public enum Search {
+        /* Полный перебор всех последовательностей */
+        GREEDY,
+        /* Перебор с отсечением пустых ходов и повторных состояний */
+        PRUNED,
+        /* Полный перебор, распределённый по потокам */
+        PARALLEL,
+        /* Кратчайшая последовательность (IDA*) в пределах времени */
+        OPTIMAL,
+        /* Лучевой поиск заданной ширины */
+        BEAM
+    }
+    
+    /**
+     * Получатель промежуточных результатов поиска
+     */
+    public interface SequenceListener {
+        
+        /**
+         * Найдена более короткая последовательность
+         * @param sequence массив с идентификаторами цветов для заливки
+         */
+        void onSequence(byte[] sequence);
+    }
+    
+    /**
+     * Получатель ходов по мере их выбора
+     */
+    public interface MoveListener {
+        
+        /**
+         * Выбран очередной ход, он уже не изменится
+         * @param color идентификатор цвета для заливки
+         * @return false - прекратить поиск
+         */
+        boolean onMove(byte color);
+    }
+    
+    /* Количество цветов в игре, палитра поля может быть и больше */
+    static final int MAX_COLORS = 6;
     /* На сколько шагов вперёд просчитывать ход */
     private static final int FILL_STEPS = 4;
+    /* Сколько последовательностей ходов можно перебирать на каждом ходе.
+       При большой палитре глубина просчёта уменьшается до этого предела */
+    private static final int MAX_LOOKAHEAD_SEQUENCES = 1 << 16;
+    /* Время на точный поиск по умолчанию, мс */
+    private static final long DEFAULT_TIME_BUDGET = 1000;
+    /* Ширина луча по умолчанию */
+    private static final int DEFAULT_BEAM_WIDTH = 64;
+    /* Объём памяти под таблицу просчитанных состояний, байт */
+    private static final long LOOKAHEAD_TABLE_BYTES = 1L << 20;
+    private static final long OPTIMAL_TABLE_BYTES = 16L << 20;
+    /* Ширина луча, после которой поиск с ограничением времени переходит к точному */
+    private static final int MAX_ANYTIME_BEAM_WIDTH = 4096;
+    /* Объём памяти под лучи поиска с ограничением времени, байт */
+    private static final long ANYTIME_BEAM_BYTES = 64L << 20;
+    /* Объём памяти под состояния дерева вариантов, байт */
+    private static final long LOOKAHEAD_TREE_BYTES = 64L << 20;
     
+    /* Идентификаторы цветов клеток */
+    private FloodBoard board;
     /* Игровое поле */
-    private byte[][] table;
+    private FloodState table;
+    /* Площади заливки всех последовательностей ходов, переиспользуется */
+    private final int[] fillRate;
     /* Цвета, соответствующие ID */
     private int[] colors;
+    /* Количество цветов в просчёте, не меньше MAX_COLORS */
+    private final int colorsCount;
+    /* На сколько шагов вперёд просчитывать ход при этой палитре */
+    private final int fillSteps;
+    /* Способ просчёта ходов */
+    private Search search;
+    /* Количество потоков для параллельного просчёта */
+    private int parallelism;
+    /* Время на точный поиск, мс */
+    private long timeBudget;
+    /* Ширина луча */
+    private int beamWidth;
+    /* Таблица просчитанных состояний последнего поиска */
+    private TranspositionTable transpositions;
+    /* Статистика просчёта: сколько узлов просчитано и сколько при полном переборе */
+    private long expandedNodes, bruteForceNodes;
 
     public BotFloodIt(int[][] table) {
-        colors = new int[MAX_COLORS];
-        for (int i = 0; i < colors.length; i++) {
-            colors[i] = -1;
-        }
-        this.table = colorsToIds(table);
+        this(table, Engine.REGIONS);
+    }
+    
+    /**
+     * Конструктор с выбором представления поля
+     * @param table цвета клеток поля
+     * @param engine представление поля для просчёта
+     */
+    public BotFloodIt(int[][] table, Engine engine) {
+        board = new FloodBoard(colorsToIds(table));
+        colorsCount = colors.length;
+        fillSteps = getFillSteps(colorsCount);
+        this.table = createState(new FloodBoard(board), engine);
+        fillRate = new int[(int) Math.pow(colorsCount, fillSteps)];
+        search = Search.GREEDY;
+        parallelism = Runtime.getRuntime().availableProcessors();
+        timeBudget = DEFAULT_TIME_BUDGET;
+        beamWidth = DEFAULT_BEAM_WIDTH;
+    }
+    
+    /**
+     * Задать способ просчёта ходов
+     * @param search способ просчёта
+     */
+    public void setSearch(Search search) {
+        this.search = search;
+    }
+    
+    /**
+     * Задать количество потоков для параллельного просчёта
+     * @param parallelism количество потоков
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+    
+    /**
+     * Задать время на точный поиск. В него входит и перебор, который
+     * находит верхнюю границу. Если кратчайшая последовательность
+     * не найдена за это время, возвращается результат перебора.
+     * @param timeBudget время в миллисекундах
+     */
+    public void setTimeBudget(long timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+    
+    /**
+     * Задать ширину луча для лучевого поиска
+     * @param beamWidth сколько лучших последовательностей хранить на каждом ходе
+     */
+    public void setBeamWidth(int beamWidth) {
+        this.beamWidth = Math.max(1, beamWidth);
+    }
+    
+    /**
+     * Получить количество узлов, просчитанных при последнем поиске
+     * @return число узлов
+     */
+    public long getExpandedNodes() {
+        return expandedNodes;
+    }
+    
+    /**
+     * Получить количество узлов, которое просчитал бы полный перебор
+     * @return число узлов
+     */
+    public long getBruteForceNodes() {
+        return bruteForceNodes;
+    }
+    
+    /**
+     * Получить количество найденных записей в таблице просчитанных состояний
+     * @return число попаданий при последнем поиске
+     */
+    public long getTranspositionHits() {
+        return (transpositions == null) ? 0 : transpositions.getHits();
+    }
+    
+    /**
+     * Получить количество промахов в таблице просчитанных состояний
+     * @return число промахов при последнем поиске
+     */
+    public long getTranspositionMisses() {
+        return (transpositions == null) ? 0 : transpositions.getMisses();
     }
     
     /**
      * Получить цвета клеток в палитре
-     * @return массив цветов RGB
+     * @return массив цветов RGB, не меньше MAX_COLORS элементов, -1 - цвета нет
      */
     public int[] getColors() {
         return colors;
@@ -39,10 +210,172 @@ public class BotFloodIt {
      * @return массив с идентификаторами цветов для заливки
      */
     public byte[] getFillSequence() {
-        byte[][] copyTable = copyTable(table);
+        StageEvent event = startSearch();
+        byte[] out = findFillSequence();
+        finishSearch(event);
+        return out;
+    }
+    
+    /*
+     * Последовательность заливки выбранным способом просчёта
+     */
+    private byte[] findFillSequence() {
+        if (search == Search.BEAM) {
+            BeamSearch beam = new BeamSearch(table, colorsCount, beamWidth);
+            byte[] out = beam.solve(table);
+            expandedNodes = beam.getExpandedNodes();
+            bruteForceNodes = 0;
+            return out;
+        }
+        if (search != Search.OPTIMAL) {
+            return getLookaheadSequence(search, null);
+        }
+        // Последовательность перебора служит верхней границей и запасным вариантом.
+        // Перебор не прерывается, поэтому его время вычитается из времени точного поиска
+        long nanoDeadline = System.nanoTime() + timeBudget * 1000000L;
+        byte[] greedy = getLookaheadSequence(Search.GREEDY, null);
+        long budget = (nanoDeadline - System.nanoTime()) / 1000000L;
+        if (budget <= 0) return greedy;
+        RegionState start = getRegionState();
+        OptimalSolver solver = new OptimalSolver(start.getGraph(), createTranspositions(OPTIMAL_TABLE_BYTES));
+        byte[] optimal = solver.solve(start, greedy, budget);
+        expandedNodes += solver.getExpandedNodes();
+        return (optimal != null) ? optimal : greedy;
+    }
+    
+    /**
+     * Получить последовательность заливки, сообщая каждый ход, как только он выбран.
+     * Перебор выбирает ходы по одному, поэтому первый ход известен
+     * после просчёта одного хода, а не всей последовательности.
+     * Лучевой и точный поиск находят последовательность целиком,
+     * их ходы сообщаются после окончания поиска.
+     * @param listener получатель ходов
+     * @return последовательность до конца игры или до отказа получателя
+     */
+    public byte[] getFillSequence(MoveListener listener) {
+        if ((search != Search.BEAM) && (search != Search.OPTIMAL)) {
+            StageEvent event = startSearch();
+            byte[] sequence = getLookaheadSequence(search, listener);
+            finishSearch(event);
+            return sequence;
+        }
+        byte[] sequence = getFillSequence();
+        for (int i = 0; i < sequence.length; i++) {
+            if (!listener.onMove(sequence[i])) return Arrays.copyOf(sequence, i + 1);
+        }
+        return sequence;
+    }
+    
+    /**
+     * Получить последовательность заливки, улучшая её до наступления времени deadline.
+     * Сначала быстро находится первое решение, затем лучевой поиск
+     * со всё большей шириной луча, пока лучи помещаются в отведённую память,
+     * а на малых полях - точный поиск.
+     * @param deadline время окончания поиска по System.currentTimeMillis()
+     * @param listener получатель каждой более короткой последовательности, может быть null
+     * @return самая короткая найденная последовательность
+     */
+    public byte[] getFillSequence(long deadline, SequenceListener listener) {
+        StageEvent event = startSearch();
+        byte[] best = findFillSequence(deadline, listener);
+        finishSearch(event);
+        return best;
+    }
+    
+    /*
+     * Последовательность заливки, улучшаемая до наступления времени deadline
+     */
+    private byte[] findFillSequence(long deadline, SequenceListener listener) {
+        long nanoDeadline = System.nanoTime() + (deadline - System.currentTimeMillis()) * 1000000L;
+        expandedNodes = 0;
+        bruteForceNodes = 0;
+        // Первое решение находим без ограничения времени
+        BeamSearch beam = new BeamSearch(table, colorsCount, 1);
+        byte[] best = beam.solve(table);
+        expandedNodes += beam.getExpandedNodes();
+        if (listener != null) listener.onSequence(best);
+        
+        int maxWidth = getAnytimeBeamWidth();
+        int width = Math.min(4, maxWidth);
+        while (System.nanoTime() - nanoDeadline < 0) {
+            beam = new BeamSearch(table, colorsCount, width);
+            byte[] seq = beam.solve(table, nanoDeadline);
+            expandedNodes += beam.getExpandedNodes();
+            if (seq == null) return best;
+            if (seq.length < best.length) {
+                best = seq;
+                if (listener != null) listener.onSequence(best);
+            }
+            if (width >= maxWidth) break;
+            width = Math.min(width * 4, maxWidth);
+        }
+        // Лучи упёрлись в память - поле слишком велико и для точного поиска
+        if (maxWidth < MAX_ANYTIME_BEAM_WIDTH) return best;
+        
+        long budget = (nanoDeadline - System.nanoTime()) / 1000000L;
+        if (budget <= 0) return best;
+        RegionState start = getRegionState();
+        OptimalSolver solver = new OptimalSolver(start.getGraph(), createTranspositions(OPTIMAL_TABLE_BYTES));
+        byte[] optimal = solver.solve(start, best, budget);
+        expandedNodes += solver.getExpandedNodes();
+        if ((optimal != null) && (optimal.length < best.length)) {
+            best = optimal;
+            if (listener != null) listener.onSequence(best);
+        }
+        return best;
+    }
+    
+    /*
+     * Наибольшая ширина луча для поиска с ограничением времени.
+     * В памяти одновременно два луча, запись луча - состояние над графом
+     * областей, больше всего в нём граница по цветам и журнал одного хода:
+     * (цвета + 1) * области * 4 байта
+     */
+    private int getAnytimeBeamWidth() {
+        int regions = getRegionState().getGraph().getRegionsCount();
+        long entryBytes = 4L * (colorsCount + 1) * regions + regions;
+        long budget = Math.min(ANYTIME_BEAM_BYTES, Runtime.getRuntime().maxMemory() / 4);
+        long width = budget / (2 * entryBytes);
+        return (int) Math.max(1, Math.min(MAX_ANYTIME_BEAM_WIDTH, width));
+    }
+    
+    /*
+     * Получить последовательность заливки просчётом на fillSteps ходов вперёд.
+     * Каждый выбранный ход сразу передаётся listener, если он задан
+     */
+    private byte[] getLookaheadSequence(Search search, MoveListener listener) {
+        FloodState copyTable = table.copy();
         ArrayList<Byte> seq = new ArrayList<Byte>();
-        while(!gameCompleted(copyTable)) {
-            seq.add(getNextFillColor(copyTable));
+        expandedNodes = 0;
+        bruteForceNodes = 0;
+        if (search == Search.PRUNED) {
+            PrunedSearch pruned = new PrunedSearch(copyTable, colorsCount, fillSteps,
+                    createTranspositions(LOOKAHEAD_TABLE_BYTES));
+            while(!copyTable.isCompleted()) {
+                byte colorID = pruned.getNextFillColor(copyTable);
+                copyTable.fill(colorID);
+                seq.add(colorID);
+                if ((listener != null) && !listener.onMove(colorID)) break;
+            }
+            expandedNodes = pruned.getExpandedNodes();
+            bruteForceNodes = pruned.getBruteForceNodes();
+        } else if (search == Search.PARALLEL) {
+            ParallelSearch parallel = new ParallelSearch(copyTable, colorsCount, fillSteps, parallelism);
+            while(!copyTable.isCompleted()) {
+                byte colorID = getNextFillColor(copyTable, parallel);
+                seq.add(colorID);
+                if ((listener != null) && !listener.onMove(colorID)) break;
+            }
+        } else {
+            LookaheadTree tree = new LookaheadTree(copyTable, colorsCount, fillSteps,
+                    getLookaheadTreeLevels(copyTable));
+            while(!copyTable.isCompleted()) {
+                byte colorID = getNextFillColor(copyTable, tree);
+                tree.advance(colorID);
+                seq.add(colorID);
+                if ((listener != null) && !listener.onMove(colorID)) break;
+            }
+            expandedNodes = tree.getExpandedNodes();
         }
         byte[] out = new byte[seq.size()];
         for (int i = 0; i < out.length; i++) {
@@ -52,28 +385,48 @@ public class BotFloodIt {
     }
     
     /*
-     * Получить индекс следующего цвета для заливки
+     * Сколько уровней хранит дерево вариантов. Полное дерево хранит
+     * colorsCount^(fillSteps-1) копий поля, поэтому на больших полях
+     * с большой палитрой уровней меньше, пока копии не поместятся
+     * в отведённую память, но не меньше двух. Глубина просчёта
+     * от этого не меняется, недостающие уровни просчитываются без хранения
      */
-    private byte getNextFillColor(byte[][] table) {
-        // Количество вариантов заливок
-        int fillSize = (int) Math.pow(MAX_COLORS, FILL_STEPS);
-        int[] fillRate = new int[fillSize];
-        // Заполняем значениями степени заливки
-        int[] fillPow = new int[FILL_STEPS];
-        for (int i = 0; i < FILL_STEPS; i++) {
-            fillPow[i] = (int) Math.pow(MAX_COLORS, i);
-        }
-        // Заливаем FILL_STEPS раз MAX_COLORS вариантов
-        for (int i = 0; i < fillSize; i++) {
-            byte[][] iteration = copyTable(table);
-            for (int j = 0; j < FILL_STEPS; j++) {
-                byte fillColor =  (byte) (i / fillPow[j] % MAX_COLORS);
-                fillTable(iteration, fillColor);
-            }
-            // Подсчитываем число залитых ячеек
-            fillRate[i] = getFillCount(iteration);
+    private int getLookaheadTreeLevels(FloodState state) {
+        long budget = Math.min(LOOKAHEAD_TREE_BYTES, Runtime.getRuntime().maxMemory() / 4);
+        long stateBytes = state.getCopyBytes();
+        int levels = fillSteps;
+        while ((levels > 2) && (LookaheadTree.getStatesCount(colorsCount, levels) * stateBytes > budget)) {
+            levels--;
         }
-        // Теперь ищем максимально залитый участок из FILL_STEPS итераций заливки
+        return levels;
+    }
+    
+    /*
+     * Получить индекс следующего цвета для заливки по дереву вариантов
+     */
+    private byte getNextFillColor(FloodState table, LookaheadTree tree) {
+        countBruteForceNodes();
+        tree.rateFills(fillRate);
+        return selectFillColor(table);
+    }
+    
+    /*
+     * Получить индекс следующего цвета для заливки параллельным перебором
+     */
+    private byte getNextFillColor(FloodState table, ParallelSearch parallel) {
+        countBruteForceNodes();
+        expandedNodes = bruteForceNodes;
+        parallel.rateFills(table, fillRate);
+        return selectFillColor(table);
+    }
+    
+    /*
+     * Выбрать цвет с наибольшей площадью заливки и залить им поле
+     */
+    private byte selectFillColor(FloodState table) {
+        // Количество вариантов заливок
+        int fillSize = fillRate.length;
+        // Теперь ищем максимально залитый участок из fillSteps итераций заливки
         int maxArea = fillRate[0];
         int maxColor = 0;
         for (int i = 1; i < fillSize; i++) {
@@ -83,115 +436,147 @@ public class BotFloodIt {
             }
         }
         // Получаем цвет с наибольшей площадью дальнейшей заливки
-        byte colorID = (byte) (maxColor % MAX_COLORS);
-        fillTable(table, colorID);
+        byte colorID = (byte) (maxColor % colorsCount);
+        table.fill(colorID);
         return colorID;
     }
     
     /*
-     * Преобразование массива с цветами в массив с идентификаторами
+     * Учесть узлы, которые просчитал бы полный перебор на один ход
      */
-    private byte[][] colorsToIds(int[][] tableColor) {
-        int size = tableColor.length;
-        byte[][] out = new byte[size][size];
-        int colorsReaded = 1; // сколько цветов распознано
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                int color = tableColor[i][j];
-                for (byte k = 0; k < colorsReaded; k++) {
-                    // Добавляем цвет в палитру
-                    if (colors[k] == -1) {
-                        colors[k] = color;
-                        colorsReaded++;
-                        if (colorsReaded > MAX_COLORS) colorsReaded = MAX_COLORS;
-                    }
-                    // Если цвет уже в палитре, то присваиваем ему ID
-                    if (color == colors[k]) {
-                        out[i][j] = k;
-                        break;
-                    }
-                }
-            }
+    private void countBruteForceNodes() {
+        for (int i = 1; i <= fillSteps; i++) {
+            bruteForceNodes += (long) Math.pow(colorsCount, i);
         }
-        return out;
     }
     
-    /**
-     * Залить заданное поле цветом color
-     * @param table игровое поле для заливки
-     * @param color цвет заливки
+    /*
+     * Глубина просчёта для палитры из colorsCount цветов:
+     * FILL_STEPS, если перебор не превышает MAX_LOOKAHEAD_SEQUENCES, иначе меньше,
+     * но не меньше двух
      */
-    private void fillTable(byte[][] table, byte color) {
-        if (table[0][0] == color) return;
-        fill(table, 0, 0, table[0][0], color);
+    static int getFillSteps(int colorsCount) {
+        int steps = FILL_STEPS;
+        while ((steps > 2) && (Math.pow(colorsCount, steps) > MAX_LOOKAHEAD_SEQUENCES)) {
+            steps--;
+        }
+        return steps;
     }
     
     /*
-     * Заливка поля по координатам
+     * Просчитать площади заливки всех продолжений префикса prefix из level ходов,
+     * уже сделанных на поле board, на depth ходов вперёд. Цвет шага j префикса i равен
+     * i / colorsCount^j % colorsCount. Каждый ход делается и отменяется
+     * на том же поле, а для последнего шага берём прирост по границе
+     * вместо ещё одной заливки. Площадь последовательности
+     * с последним цветом c записывается в fillRate[c * prefixesCount + i],
+     * где prefixesCount = colorsCount^(depth-1).
+     * После просчёта поле board возвращается в исходное состояние.
      */
-    private void fill(byte[][] table, int x, int y, byte prevColor, byte color) {
-        // Проверка на выход за границы игрового поля
-        if ( (x < 0) || (y < 0) || (x >= table.length) || (y >= table.length) ) return;
-        if (table[x][y] == prevColor) {
-            table[x][y] = color;
-            // Заливаем смежные области
-            fill(table, x-1, y, prevColor, color);
-            fill(table, x+1, y, prevColor, color);
-            fill(table, x, y-1, prevColor, color);
-            fill(table, x, y+1, prevColor, color);
+    static void rateFills(FloodState board, int colorsCount, int depth,
+                          int level, int prefix, int[] fillRate) {
+        if (level == depth - 1) {
+            int prefixSize = (int) Math.pow(colorsCount, depth - 1);
+            // Подсчитываем число залитых ячеек
+            int count = board.getFillCount();
+            for (int lastColor = 0; lastColor < colorsCount; lastColor++) {
+                fillRate[lastColor * prefixSize + prefix] = count + board.getFillGain((byte) lastColor);
+            }
+            return;
+        }
+        int weight = 1;
+        for (int j = 0; j < level; j++) {
+            weight *= colorsCount;
+        }
+        for (int fillColor = 0; fillColor < colorsCount; fillColor++) {
+            board.fill((byte) fillColor);
+            rateFills(board, colorsCount, depth, level + 1, prefix + fillColor * weight, fillRate);
+            board.undo();
         }
     }
     
-    /**
-     * Получить количество залитых ячеек
-     * @param table игровое поле
+    /*
+     * Начало поиска: статистика таблицы прошлого поиска больше не нужна
      */
-    private int getFillCount(byte[][] table) {
-        return getCount(table, 0, 0, table[0][0]);
+    private StageEvent startSearch() {
+        transpositions = null;
+        return Metrics.start(Metrics.Stage.SOLVE);
     }
     
     /*
-     * Подсчет залитых ячеек по координатам
+     * Записать статистику поиска в общие показатели
      */
-    private int getCount(byte[][] table, int x, int y, byte color) {
-        // Проверка на выход за границы игрового поля
-        if ( (x < 0) || (y < 0) || (x >= table.length) || (y >= table.length) ) return 0;
-        int count = 0;
-        if (table[x][y] == color) {
-            table[x][y] = -1;
-            count = 1;
-            // Считаем смежные ячейки
-            count += getCount(table, x-1, y, color);
-            count += getCount(table, x+1, y, color);
-            count += getCount(table, x, y-1, color);
-            count += getCount(table, x, y+1, color);
-        }
-        return count;
+    private void finishSearch(StageEvent event) {
+        Metrics.recordSearch(event, expandedNodes, bruteForceNodes,
+                getTranspositionHits(), getTranspositionMisses());
     }
     
     /*
-     * Проверка, залита ли вся область одним цветом
+     * Новая таблица просчитанных состояний, её статистика доступна после поиска
      */
-    private boolean gameCompleted(byte[][] table) {
-        byte color = table[0][0];
-        int size = table.length;
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (table[i][j] != color) return false;
-            }
+    private TranspositionTable createTranspositions(long maxBytes) {
+        transpositions = new TranspositionTable(maxBytes);
+        return transpositions;
+    }
+    
+    /*
+     * Начальное состояние над графом областей для точного поиска
+     */
+    private RegionState getRegionState() {
+        if (table instanceof RegionState) return (RegionState) table;
+        return new RegionGraph(board).createState();
+    }
+    
+    /*
+     * Создание представления поля для просчёта
+     */
+    private FloodState createState(FloodBoard board, Engine engine) {
+        if ((engine == Engine.AUTO) && BitBoard.fits(board)) {
+            engine = Engine.BITS;
+        }
+        switch (engine) {
+            case CELLS:
+                return board;
+            case BITS:
+                if (BitBoard.fits(board)) return new BitBoard(board);
+                // Поле слишком широкое для битовых масок
+                return new RegionGraph(board).createState();
+            default:
+                return new RegionGraph(board).createState();
         }
-        return true;
     }
     
     /*
-     * Копирование массива игрового поля
+     * Преобразование массива с цветами в массив с идентификаторами.
+     * Палитра заполняется в порядке появления цветов, её размер
+     * ограничен только типом идентификатора
      */
-    private byte[][] copyTable(byte[][] table) {
-        int size = table.length;
+    private byte[][] colorsToIds(int[][] tableColor) {
+        int size = tableColor.length;
         byte[][] out = new byte[size][size];
+        int[] palette = new int[MAX_COLORS];
+        int colorsReaded = 0; // сколько цветов распознано
         for (int i = 0; i < size; i++) {
-            System.arraycopy(table[i], 0, out[i], 0, size);
+            for (int j = 0; j < size; j++) {
+                int color = tableColor[i][j];
+                int k = 0;
+                while ((k < colorsReaded) && (palette[k] != color)) k++;
+                if (k == colorsReaded) {
+                    // Добавляем цвет в палитру
+                    if (colorsReaded > Byte.MAX_VALUE) {
+                        throw new IllegalArgumentException("Too many colors: more than " + (Byte.MAX_VALUE + 1));
+                    }
+                    if (colorsReaded == palette.length) {
+                        palette = Arrays.copyOf(palette, palette.length * 2);
+                    }
+                    palette[colorsReaded++] = color;
+                }
+                out[i][j] = (byte) k;
+            }
         }
+        colors = new int[Math.max(MAX_COLORS, colorsReaded)];
+        Arrays.fill(colors, -1);
+        System.arraycopy(palette, 0, colors, 0, colorsReaded);
         return out;
     }
 }
@@ -0,0 +1,291 @@
+package main;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Захват экрана с запоминанием положения поля и кнопок.
+ * Первый захват - весь экран, по нему находятся кнопки.
+ * Дальше захватывается только прямоугольник поля и полоса кнопок,
+ * а весь экран - лишь если запомненное положение перестало совпадать
+ * с изображением: кнопки не на месте или цвета ячеек не из палитры.
+ * @author aNNiMON
+ */
+public class CaptureSession {
+
+    /* Отступ вокруг кнопок при захвате, пикселей */
+    private static final int BUTTONS_MARGIN = 4;
+
+    private final RobotUtils robot;
+    private final int boardSize;
+    private int cellSize;
+    /* Положение поля на экране */
+    private Point board;
+    /* Кнопки на экране и их цвета, null - ещё не найдены */
+    private Point[] buttons;
+    private int[] buttonColors;
+    /* Последний полный снимок экрана, null - последний захват был частичным */
+    private BufferedImage screen;
+    /* Часть экрана, в которой находится окно игры, null - весь экран.
+       Полный снимок - это снимок этой части */
+    private Rectangle window;
+    /* Положение полного снимка на экране */
+    private Point screenOrigin;
+    /* Статистика захватов */
+    private long fullCaptures, partialCaptures, capturedPixels;
+
+    /**
+     * @param robot доступ к экрану
+     * @param boardSize размерность поля
+     * @param cellSize размер ячейки
+     * @param x координата поля на экране
+     * @param y координата поля на экране
+     */
+    public CaptureSession(RobotUtils robot, int boardSize, int cellSize, int x, int y) {
+        this.robot = robot;
+        this.boardSize = boardSize;
+        this.cellSize = cellSize;
+        board = new Point(x, y);
+        screenOrigin = new Point(0, 0);
+    }
+
+    /**
+     * Ограничить полные снимки частью экрана. Нужно, когда на экране
+     * несколько полей: поле и кнопки ищутся только в своём окне
+     * @param window часть экрана с окном игры, null - весь экран
+     */
+    public void setWindow(Rectangle window) {
+        this.window = (window == null) ? null : new Rectangle(window);
+        screen = null;
+    }
+
+    /**
+     * Проверить, подходит ли сессия для заданных настроек
+     * @return true - настройки те же, что при создании или после уточнения
+     */
+    public boolean matches(int boardSize, int cellSize, int x, int y) {
+        return (this.boardSize == boardSize) && (this.cellSize == cellSize)
+                && (board.x == x) && (board.y == y);
+    }
+
+    /**
+     * Захватить поле
+     * @return обработчик изображения, координаты поля в нём уже заданы
+     */
+    public ImageUtils capture() {
+        if (buttons != null) {
+            Rectangle area = getCaptureArea();
+            BufferedImage image = grab(area);
+            partialCaptures++;
+            ImageUtils iu = new ImageUtils(image, boardSize, cellSize, board.x - area.x, board.y - area.y);
+            if (isValid(image, area, iu)) {
+                screen = null;
+                return iu;
+            }
+            // Окно сдвинулось или изменилось - ищем всё заново
+            buttons = null;
+        }
+        grabScreen();
+        ImageUtils iu = createScreenUtils();
+        if ((buttonColors != null) && !isBoardValid(screen, iu)) {
+            // Палитра известна, но поле не на месте - определяем его положение
+            ImageUtils detector = new ImageUtils(screen, boardSize);
+            Point detected = detector.getBoardParameters();
+            if (detector.getCellSize() > 0) {
+                detected.translate(screenOrigin.x, screenOrigin.y);
+                board = detected;
+                cellSize = detector.getCellSize();
+                iu = createScreenUtils();
+            }
+        }
+        return iu;
+    }
+
+    /**
+     * Захватить только прямоугольник поля, без проверки положения.
+     * Для частых проверок во время игры
+     * @return обработчик изображения, поле в нём начинается с (0, 0)
+     */
+    public ImageUtils captureBoard() {
+        return captureCells(new Rectangle(0, 0, boardSize, boardSize));
+    }
+    
+    /**
+     * Захватить только часть поля, без проверки положения
+     * @param cells прямоугольник ячеек: x - столбец, y - строка
+     * @return обработчик изображения, координаты поля в нём заданы так,
+     *         что номера ячеек из cells остаются прежними
+     */
+    public ImageUtils captureCells(Rectangle cells) {
+        Rectangle area = new Rectangle(board.x + cells.x * cellSize, board.y + cells.y * cellSize,
+                cells.width * cellSize, cells.height * cellSize);
+        BufferedImage image = grab(area);
+        partialCaptures++;
+        screen = null;
+        return new ImageUtils(image, boardSize, cellSize, board.x - area.x, board.y - area.y);
+    }
+    
+    /**
+     * Получить координаты кнопок на экране
+     * @param colors цвета кнопок, не больше ImageUtils.MAX_BUTTON_COLORS
+     * @return координаты для каждого цвета или null, если кнопки не найдены
+     * @throws IllegalArgumentException если цветов больше ImageUtils.MAX_BUTTON_COLORS
+     */
+    public Point[] getButtons(int[] colors) {
+        Point[] out = getCachedButtons(colors);
+        if (out != null) return out;
+        if (screen == null) grabScreen();
+        out = createScreenUtils().getButtons(colors);
+        if (out != null) {
+            for (Point button : out) {
+                if (button != null) button.translate(screenOrigin.x, screenOrigin.y);
+            }
+            buttons = out;
+            buttonColors = colors.clone();
+        }
+        return out;
+    }
+
+    public RobotUtils getRobot() {
+        return robot;
+    }
+
+    public int getBoardSize() {
+        return boardSize;
+    }
+
+    public Point getBoard() {
+        return new Point(board);
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public long getFullCaptures() {
+        return fullCaptures;
+    }
+
+    public long getPartialCaptures() {
+        return partialCaptures;
+    }
+
+    /**
+     * Сколько всего пикселей захвачено с экрана
+     */
+    public long getCapturedPixels() {
+        return capturedPixels;
+    }
+
+    /*
+     * Кнопки из запомненных, если для каждого цвета есть кнопка
+     */
+    private Point[] getCachedButtons(int[] colors) {
+        if (buttons == null) return null;
+        Point[] out = new Point[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            if (colors[i] == -1) continue;
+            for (int j = 0; j < buttonColors.length; j++) {
+                if ((buttonColors[j] != -1) && ImageUtils.isEquals(colors[i], buttonColors[j],
+                        ImageUtils.FIND_BUTTON_TOLERANCE)) {
+                    out[i] = buttons[j];
+                    break;
+                }
+            }
+            if (out[i] == null) return null;
+        }
+        return out;
+    }
+
+    /*
+     * Прямоугольник поля вместе с полосой кнопок
+     */
+    private Rectangle getCaptureArea() {
+        int size = boardSize * cellSize;
+        Rectangle area = new Rectangle(board.x, board.y, size, size);
+        for (int i = 0; i < buttons.length; i++) {
+            if (buttons[i] == null) continue;
+            area.add(new Rectangle(buttons[i].x - BUTTONS_MARGIN, buttons[i].y - BUTTONS_MARGIN,
+                    2 * BUTTONS_MARGIN + 1, 2 * BUTTONS_MARGIN + 1));
+        }
+        return area;
+    }
+
+    /*
+     * Запомненное положение совпадает с изображением
+     */
+    private boolean isValid(BufferedImage image, Rectangle area, ImageUtils iu) {
+        for (int i = 0; i < buttons.length; i++) {
+            if ((buttons[i] == null) || (buttonColors[i] == -1)) continue;
+            int color = image.getRGB(buttons[i].x - area.x, buttons[i].y - area.y);
+            if (!ImageUtils.isEquals(color, buttonColors[i], ImageUtils.FIND_BUTTON_TOLERANCE)) {
+                return false;
+            }
+        }
+        return isBoardValid(image, iu);
+    }
+
+    /*
+     * Все ячейки поля - цвета кнопок
+     */
+    private boolean isBoardValid(BufferedImage image, ImageUtils iu) {
+        int size = boardSize * cellSize;
+        Point corner = iu.getBoardPoint();
+        if ((corner.x < 0) || (corner.y < 0)
+                || (corner.x + size > image.getWidth()) || (corner.y + size > image.getHeight())) {
+            return false;
+        }
+        int[][] table = iu.getBoardColors();
+        for (int[] row : table) {
+            for (int color : row) {
+                if (!isPaletteColor(color)) return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isPaletteColor(int color) {
+        for (int i = 0; i < buttonColors.length; i++) {
+            if ((buttonColors[i] != -1) && ImageUtils.isEquals(color, buttonColors[i],
+                    ImageUtils.FIND_BUTTON_TOLERANCE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Полный снимок: окно игры или весь экран
+     */
+    private void grabScreen() {
+        screen = grab(window);
+        if (window != null) {
+            screenOrigin = window.getLocation();
+        } else {
+            screenOrigin = new Point(0, 0);
+        }
+        fullCaptures++;
+    }
+
+    /*
+     * Обработчик полного снимка с координатами поля в нём
+     */
+    private ImageUtils createScreenUtils() {
+        return new ImageUtils(screen, boardSize, cellSize, board.x - screenOrigin.x, board.y - screenOrigin.y);
+    }
+
+    /*
+     * Захватить прямоугольник экрана, null - весь экран
+     */
+    private BufferedImage grab(Rectangle area) {
+        BufferedImage image;
+        if (area == null) {
+            image = robot.getImage(-1, -1, -1, -1);
+        } else {
+            image = robot.getImage(area.x, area.y, area.width, area.height);
+        }
+        capturedPixels += (long) image.getWidth() * image.getHeight();
+        return image;
+    }
+}
@@ -0,0 +1,76 @@
+package main;
+
+import java.awt.Point;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Общая очередь нажатий для нескольких полей.
+ * Мышь одна, поэтому нажатия выполняются одним потоком по очереди:
+ * первым нажимает тот, чей ход готов раньше.
+ * @author aNNiMON
+ */
+public class ClickDispatcher {
+
+    private final RobotUtils robot;
+    private final ExecutorService executor;
+    /* Сколько нажатие ждёт в очереди */
+    private final TimingHistogram queueTime;
+
+    /**
+     * @param robot через него выполняются все нажатия
+     */
+    public ClickDispatcher(RobotUtils robot) {
+        this.robot = robot;
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "clicks");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        queueTime = new TimingHistogram();
+    }
+
+    /**
+     * Нажать в точку и дождаться окончания нажатия
+     * @param click точка по которой нужно кликнуть
+     * @param holdDelay сколько держать кнопку нажатой, мс
+     * @throws InterruptedException если ожидание было прервано
+     */
+    public void click(final Point click, final int holdDelay) throws InterruptedException {
+        final long queued = System.nanoTime();
+        Future<?> done = executor.submit(new Runnable() {
+
+            @Override
+            public void run() {
+                queueTime.record(System.nanoTime() - queued);
+                robot.clickPoint(click, holdDelay);
+            }
+        });
+        try {
+            done.get();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * Время ожидания нажатий в очереди
+     */
+    public TimingHistogram getQueueTime() {
+        return queueTime;
+    }
+
+    /**
+     * Остановить поток нажатий
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,332 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Игровое поле в виде плоского массива.
+ * Заливка и подсчёт выполняются итеративно построчным алгоритмом
+ * с переиспользуемым стеком, поэтому не зависят от глубины стека вызовов.
+ * @author aNNiMON
+ */
+public class FloodBoard implements FloodState {
+
+    /* Размеры поля */
+    private final int width, height;
+    /* Клетки поля, построчно */
+    private final byte[] cells;
+    /* Стек затравочных точек для заливки */
+    private int[] stack;
+    /* Метки посещённых клеток при подсчёте */
+    private final int[] marks;
+    /* Текущее значение метки */
+    private int mark;
+    /* Журнал отмены: залитые отрезки и заголовок каждого хода */
+    private int[] journal;
+    private int journalSize;
+    /* Признаки встреченных цветов при подсчёте оставшихся */
+    private final boolean[] colorsSeen;
+
+    /**
+     * Создать поле из таблицы идентификаторов цветов
+     * @param table таблица [строка][столбец]
+     */
+    public FloodBoard(byte[][] table) {
+        this(table[0].length, table.length);
+        for (int i = 0; i < height; i++) {
+            System.arraycopy(table[i], 0, cells, i * width, width);
+        }
+    }
+
+    /**
+     * Создать копию поля
+     * @param board исходное поле
+     */
+    public FloodBoard(FloodBoard board) {
+        this(board.width, board.height);
+        // Журнал одного хода: в строке не больше (width + 1) / 2 залитых отрезков
+        // по два значения и заголовок, поэтому ход копии его не расширяет
+        journal = new int[Math.max(64, height * (width + 1) + 2)];
+        copyFrom(board);
+    }
+
+    private FloodBoard(int width, int height) {
+        this.width = width;
+        this.height = height;
+        cells = new byte[width * height];
+        marks = new int[cells.length];
+        stack = new int[Math.max(16, 2 * (width + height))];
+        mark = 0;
+        colorsSeen = new boolean[Byte.MAX_VALUE + 1];
+        journal = new int[64];
+        journalSize = 0;
+    }
+
+    @Override
+    public long getHash() {
+        // После подсчёта залитые клетки отмечены текущей меткой
+        getFillCount();
+        long hash = cells[0] * 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < cells.length; i++) {
+            if (marks[i] != mark) continue;
+            long key = (i + 1) * 0xC2B2AE3D27D4EB4FL;
+            hash += key ^ (key >>> 31);
+        }
+        return hash;
+    }
+
+    @Override
+    public FloodState copy() {
+        return new FloodBoard(this);
+    }
+
+    @Override
+    public long getCopyBytes() {
+        // Клетки, метки, стек, признаки цветов и журнал одного хода
+        return 5L * cells.length + 4L * stack.length + colorsSeen.length
+                + 4L * Math.max(64, height * (width + 1) + 2);
+    }
+
+    @Override
+    public void copyFrom(FloodState state) {
+        FloodBoard board = (FloodBoard) state;
+        System.arraycopy(board.cells, 0, cells, 0, cells.length);
+        journalSize = 0;
+    }
+
+    /**
+     * Получить идентификатор цвета клетки
+     * @param x столбец
+     * @param y строка
+     * @return идентификатор цвета
+     */
+    public byte getCell(int x, int y) {
+        return cells[y * width + x];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Получить цвет залитой области
+     * @return идентификатор цвета левой верхней клетки
+     */
+    @Override
+    public byte getColor() {
+        return cells[0];
+    }
+
+    /**
+     * Залить поле цветом color, начиная с левой верхней клетки
+     * @param color цвет заливки
+     */
+    @Override
+    public void fill(byte color) {
+        Metrics.countFill();
+        byte prevColor = cells[0];
+        int runs = 0;
+        if (prevColor != color) {
+            runs = fillRuns(prevColor, color);
+        }
+        record(runs);
+        record(prevColor);
+    }
+
+    @Override
+    public void undo() {
+        byte prevColor = (byte) journal[--journalSize];
+        int runs = journal[--journalSize];
+        for (int i = 0; i < runs; i++) {
+            int right = journal[--journalSize];
+            int left = journal[--journalSize];
+            for (int k = left; k <= right; k++) {
+                cells[k] = prevColor;
+            }
+        }
+    }
+
+    /*
+     * Построчная заливка области цвета prevColor, содержащей левую верхнюю клетку.
+     * Залитые отрезки записываются в журнал, возвращается их количество
+     */
+    private int fillRuns(byte prevColor, byte color) {
+        int runs = 0;
+        int top = push(0, 0);
+        while (top > 0) {
+            int pos = stack[--top];
+            if (cells[pos] != prevColor) continue;
+            int rowStart = pos - pos % width;
+            int rowEnd = rowStart + width - 1;
+            // Расширяем отрезок влево и вправо
+            int left = pos;
+            while ((left > rowStart) && (cells[left - 1] == prevColor)) left--;
+            int right = pos;
+            while ((right < rowEnd) && (cells[right + 1] == prevColor)) right++;
+            for (int i = left; i <= right; i++) {
+                cells[i] = color;
+            }
+            record(left);
+            record(right);
+            runs++;
+            // Добавляем затравки из соседних строк
+            if (rowStart > 0) {
+                top = pushRuns(left - width, right - width, prevColor, top, false);
+            }
+            if (rowEnd < cells.length - 1) {
+                top = pushRuns(left + width, right + width, prevColor, top, false);
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Получить количество залитых ячеек
+     * @return размер связной области, содержащей левую верхнюю клетку
+     */
+    @Override
+    public int getFillCount() {
+        nextMark();
+        byte color = cells[0];
+        int count = 0;
+        int top = push(0, 0);
+        while (top > 0) {
+            int pos = stack[--top];
+            if ((cells[pos] != color) || (marks[pos] == mark)) continue;
+            int rowStart = pos - pos % width;
+            int rowEnd = rowStart + width - 1;
+            int left = pos;
+            while ((left > rowStart) && (cells[left - 1] == color) && (marks[left - 1] != mark)) left--;
+            int right = pos;
+            while ((right < rowEnd) && (cells[right + 1] == color) && (marks[right + 1] != mark)) right++;
+            for (int i = left; i <= right; i++) {
+                marks[i] = mark;
+            }
+            count += right - left + 1;
+            if (rowStart > 0) {
+                top = pushRuns(left - width, right - width, color, top, true);
+            }
+            if (rowEnd < cells.length - 1) {
+                top = pushRuns(left + width, right + width, color, top, true);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int getFillGain(byte color) {
+        byte prevColor = cells[0];
+        if (prevColor == color) return 0;
+        nextMark();
+        int gain = 0;
+        marks[0] = mark;
+        int top = push(0, 0);
+        while (top > 0) {
+            int pos = stack[--top];
+            // Из залитой области идём в клетки обоих цветов,
+            // из присоединяемых - только в клетки нового цвета
+            boolean fromFlooded = (cells[pos] == prevColor);
+            int x = pos % width;
+            if (x > 0) top = visit(pos - 1, prevColor, color, fromFlooded, top);
+            if (x < width - 1) top = visit(pos + 1, prevColor, color, fromFlooded, top);
+            if (pos >= width) top = visit(pos - width, prevColor, color, fromFlooded, top);
+            if (pos < cells.length - width) top = visit(pos + width, prevColor, color, fromFlooded, top);
+            if (!fromFlooded) gain++;
+        }
+        return gain;
+    }
+
+    @Override
+    public int getColorsLeft() {
+        // После подсчёта залитые клетки отмечены текущей меткой
+        getFillCount();
+        Arrays.fill(colorsSeen, false);
+        int left = 0;
+        for (int i = 0; i < cells.length; i++) {
+            if ((marks[i] == mark) || colorsSeen[cells[i]]) continue;
+            colorsSeen[cells[i]] = true;
+            left++;
+        }
+        return left;
+    }
+
+    /**
+     * Проверка, залита ли вся область одним цветом
+     * @return true - игра завершена
+     */
+    @Override
+    public boolean isCompleted() {
+        byte color = cells[0];
+        for (int i = 1; i < cells.length; i++) {
+            if (cells[i] != color) return false;
+        }
+        return true;
+    }
+
+    /*
+     * Добавить в стек начала отрезков цвета color в диапазоне [from, to]
+     */
+    private int pushRuns(int from, int to, byte color, int top, boolean checkMarks) {
+        boolean inRun = false;
+        for (int i = from; i <= to; i++) {
+            boolean match = (cells[i] == color) && !(checkMarks && (marks[i] == mark));
+            if (match && !inRun) {
+                top = push(i, top);
+            }
+            inRun = match;
+        }
+        return top;
+    }
+
+    /*
+     * Посетить соседнюю клетку при подсчёте прироста заливки
+     */
+    private int visit(int pos, byte prevColor, byte color, boolean fromFlooded, int top) {
+        if (marks[pos] == mark) return top;
+        byte cell = cells[pos];
+        if ((cell == color) || (fromFlooded && (cell == prevColor))) {
+            marks[pos] = mark;
+            top = push(pos, top);
+        }
+        return top;
+    }
+
+    /*
+     * Добавить значение в журнал отмены
+     */
+    private void record(int value) {
+        if (journalSize == journal.length) {
+            int[] newJournal = new int[journal.length * 2];
+            System.arraycopy(journal, 0, newJournal, 0, journalSize);
+            journal = newJournal;
+        }
+        journal[journalSize++] = value;
+    }
+
+    /*
+     * Положить позицию в стек, при необходимости расширив его
+     */
+    private int push(int pos, int top) {
+        if (top == stack.length) {
+            int[] newStack = new int[stack.length * 2];
+            System.arraycopy(stack, 0, newStack, 0, top);
+            stack = newStack;
+        }
+        stack[top] = pos;
+        return top + 1;
+    }
+
+    /*
+     * Новое значение метки для подсчёта без очистки массива
+     */
+    private void nextMark() {
+        mark++;
+        if (mark == 0) {
+            Arrays.fill(marks, 0);
+            mark = 1;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package main;
+
+/**
+ * Состояние игрового поля, над которым выполняется просчёт заливок.
+ * @author aNNiMON
+ */
+public interface FloodState {
+
+    /**
+     * Получить цвет залитой области
+     * @return идентификатор цвета
+     */
+    byte getColor();
+
+    /**
+     * Залить область цветом color
+     * @param color цвет заливки
+     */
+    void fill(byte color);
+
+    /**
+     * Отменить последнюю заливку. Отменять можно только заливки,
+     * сделанные после создания или последнего копирования состояния.
+     */
+    void undo();
+
+    /**
+     * Получить количество залитых ячеек
+     * @return число ячеек в залитой области
+     */
+    int getFillCount();
+
+    /**
+     * Получить количество ячеек, которые добавит заливка цветом color
+     * @param color цвет заливки
+     * @return прирост залитой области, 0 - если цвет совпадает с текущим
+     */
+    int getFillGain(byte color);
+
+    /**
+     * Получить количество цветов, оставшихся вне залитой области
+     * @return число различных цветов незалитых клеток
+     */
+    int getColorsLeft();
+
+    /**
+     * Проверка, залита ли вся область одним цветом
+     * @return true - игра завершена
+     */
+    boolean isCompleted();
+
+    /**
+     * Получить хеш состояния: залитое множество и его цвет.
+     * Одинаковые состояния одного поля имеют одинаковый хеш.
+     * @return хеш состояния
+     */
+    long getHash();
+
+    /**
+     * Создать независимую копию состояния
+     * @return копия
+     */
+    FloodState copy();
+
+    /**
+     * Примерный объём памяти, который занимает копия состояния,
+     * без заголовков объектов и общих для всех копий данных
+     * @return объём в байтах
+     */
+    long getCopyBytes();
+
+    /**
+     * Скопировать другое состояние того же типа и размера.
+     * Журнал отмены при этом очищается.
+     * @param state исходное состояние
+     */
+    void copyFrom(FloodState state);
+}
@@ -0,0 +1,320 @@
+package main;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Запись одной игры: снимок поля, его положение, распознанные цвета
+ * и ходы решателя. По записи игру можно повторить без экрана и Robot.
+ * Формат записи (DataOutputStream, после маркера RECORD):
+ * <pre>
+ * short boardSize, short cellSize, int x, int y  - поле на экране
+ * short width, short height                      - снимок поля
+ * short boardX, short boardY                     - поле на снимке
+ * width*height*3 byte                            - пиксели RGB по строкам
+ * byte colorsCount, colorsCount*int              - палитра
+ * boardSize*boardSize byte                       - номера цветов ячеек
+ * UTF solver, int solveTime                      - настройки решателя
+ * short length, length*byte                      - ходы решателя
+ * short moves, short resyncs, boolean solved     - результат игры
+ * byte stagesCount, stagesCount*long             - время этапов Metrics.Stage, нс
+ * </pre>
+ * @author aNNiMON
+ */
+public class GameRecord {
+
+    /* Маркер начала записи */
+    private static final int RECORD = 1;
+
+    private final int boardSize, cellSize;
+    /* Положение поля на экране */
+    private final Point board;
+    /* Снимок поля и положение поля на нём */
+    private final BufferedImage image;
+    private final Point boardPoint;
+    /* Палитра и номера цветов ячеек [строка][столбец] */
+    private final int[] palette;
+    private final byte[][] ids;
+    /* Способ просчёта и время на поиск, мс; 0 - без ограничения */
+    private final String solver;
+    private final int solveTime;
+    /* Ходы решателя, сыгранные до первой рассинхронизации */
+    private final byte[] sequence;
+    /* Результат игры */
+    private final int moves, resyncs;
+    private final boolean solved;
+    /* Время этапов за игру, нс, индекс - Metrics.Stage.ordinal() */
+    private final long[] timings;
+
+    /**
+     * Запись игры по снимку, с которого она началась.
+     * Из снимка сохраняется только прямоугольник поля
+     * @param iu обработчик снимка с заданными координатами поля
+     * @param board положение поля на экране
+     * @param palette палитра решателя, -1 - цвета нет
+     * @param table распознанные цвета ячеек
+     * @param solver способ просчёта
+     * @param solveTime время на поиск, мс; 0 - без ограничения
+     * @param sequence ходы решателя
+     * @param player игрок, сыгравший эту игру
+     * @param solved true - поле залито
+     * @param timings время этапов за игру, нс, индекс - Metrics.Stage.ordinal()
+     */
+    public GameRecord(ImageUtils iu, Point board, int[] palette, int[][] table,
+                      String solver, int solveTime, byte[] sequence,
+                      LivePlayer player, boolean solved, long[] timings) {
+        this(iu, board, palette, table, solver, solveTime, sequence,
+                (int) player.getMoves(), (int) player.getResyncs(), solved, timings);
+    }
+
+    /*
+     * Запись игры с результатом игрока в виде чисел
+     */
+    GameRecord(ImageUtils iu, Point board, int[] palette, int[][] table,
+               String solver, int solveTime, byte[] sequence,
+               int moves, int resyncs, boolean solved, long[] timings) {
+        boardSize = table.length;
+        cellSize = iu.getCellSize();
+        this.board = new Point(board);
+        BufferedImage source = iu.getImage();
+        Point corner = iu.getBoardPoint();
+        Rectangle area = new Rectangle(corner.x, corner.y, boardSize * cellSize, boardSize * cellSize)
+                .intersection(new Rectangle(source.getWidth(), source.getHeight()));
+        if (area.isEmpty()) area = new Rectangle(0, 0, 1, 1);
+        image = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[area.width];
+        for (int y = 0; y < area.height; y++) {
+            source.getRGB(area.x, area.y + y, area.width, 1, row, 0, area.width);
+            image.setRGB(0, y, area.width, 1, row, 0, area.width);
+        }
+        boardPoint = new Point(corner.x - area.x, corner.y - area.y);
+        int colorsCount = 0;
+        while ((colorsCount < palette.length) && (palette[colorsCount] != -1)) colorsCount++;
+        this.palette = new int[colorsCount];
+        System.arraycopy(palette, 0, this.palette, 0, colorsCount);
+        ids = toIds(table, this.palette);
+        this.solver = solver;
+        this.solveTime = solveTime;
+        this.sequence = sequence.clone();
+        this.moves = moves;
+        this.resyncs = resyncs;
+        this.solved = solved;
+        this.timings = timings.clone();
+    }
+
+    private GameRecord(DataInputStream in) throws IOException {
+        boardSize = in.readShort();
+        cellSize = in.readShort();
+        board = new Point(in.readInt(), in.readInt());
+        int width = in.readShort(), height = in.readShort();
+        boardPoint = new Point(in.readShort(), in.readShort());
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        byte[] bytes = new byte[3 * width];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            in.readFully(bytes);
+            for (int x = 0; x < width; x++) {
+                row[x] = ((bytes[3 * x] & 0xFF) << 16) | ((bytes[3 * x + 1] & 0xFF) << 8) | (bytes[3 * x + 2] & 0xFF);
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        palette = new int[in.readUnsignedByte()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = in.readInt();
+        }
+        ids = new byte[boardSize][boardSize];
+        for (byte[] line : ids) {
+            in.readFully(line);
+        }
+        solver = in.readUTF();
+        solveTime = in.readInt();
+        sequence = new byte[in.readUnsignedShort()];
+        in.readFully(sequence);
+        moves = in.readUnsignedShort();
+        resyncs = in.readUnsignedShort();
+        solved = in.readBoolean();
+        timings = new long[Metrics.Stage.values().length];
+        int stagesCount = in.readUnsignedByte();
+        for (int i = 0; i < stagesCount; i++) {
+            long nanos = in.readLong();
+            if (i < timings.length) timings[i] = nanos;
+        }
+    }
+
+    /**
+     * Прочитать следующую запись
+     * @param in поток после заголовка записи сессии
+     * @return запись или null, если записи кончились
+     * @throws IOException ошибка чтения или формата
+     */
+    public static GameRecord read(DataInputStream in) throws IOException {
+        try {
+            int marker = in.read();
+            if (marker == -1) return null;
+            if (marker != RECORD) throw new IOException("bad record marker " + marker);
+            return new GameRecord(in);
+        } catch (EOFException ex) {
+            // Запись оборвалась - сессия была прервана во время записи
+            return null;
+        }
+    }
+
+    /**
+     * Записать игру
+     * @param out поток записи сессии
+     * @throws IOException ошибка записи
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(RECORD);
+        out.writeShort(boardSize);
+        out.writeShort(cellSize);
+        out.writeInt(board.x);
+        out.writeInt(board.y);
+        int width = image.getWidth(), height = image.getHeight();
+        out.writeShort(width);
+        out.writeShort(height);
+        out.writeShort(boardPoint.x);
+        out.writeShort(boardPoint.y);
+        byte[] bytes = new byte[3 * width];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                bytes[3 * x] = (byte) (row[x] >> 16);
+                bytes[3 * x + 1] = (byte) (row[x] >> 8);
+                bytes[3 * x + 2] = (byte) row[x];
+            }
+            out.write(bytes);
+        }
+        out.writeByte(palette.length);
+        for (int color : palette) {
+            out.writeInt(color);
+        }
+        for (byte[] line : ids) {
+            out.write(line);
+        }
+        out.writeUTF(solver);
+        out.writeInt(solveTime);
+        out.writeShort(sequence.length);
+        out.write(sequence);
+        out.writeShort(moves);
+        out.writeShort(resyncs);
+        out.writeBoolean(solved);
+        out.writeByte(timings.length);
+        for (long nanos : timings) {
+            out.writeLong(nanos);
+        }
+    }
+
+    /**
+     * Обработчик снимка поля, как при игре
+     */
+    public ImageUtils createImageUtils() {
+        return new ImageUtils(image, boardSize, cellSize, boardPoint.x, boardPoint.y);
+    }
+
+    /**
+     * Проверить последовательность на записанном поле
+     * @param sequence идентификаторы цветов записанной палитры
+     * @return true - последовательность заливает поле
+     */
+    public boolean isSolution(byte[] sequence) {
+        FloodBoard board = new FloodBoard(ids);
+        for (byte color : sequence) {
+            if ((color < 0) || (color >= palette.length)) return false;
+            board.fill(color);
+        }
+        return board.isCompleted();
+    }
+
+    /**
+     * Ходы решателя известны полностью: игра пройдена без рассинхронизаций
+     */
+    public boolean isComplete() {
+        return solved && (resyncs == 0);
+    }
+
+    public int getBoardSize() {
+        return boardSize;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public Point getBoard() {
+        return new Point(board);
+    }
+
+    public int[] getPalette() {
+        return palette.clone();
+    }
+
+    /**
+     * Номера цветов ячеек [строка][столбец]
+     */
+    public byte[][] getIds() {
+        byte[][] out = new byte[boardSize][];
+        for (int i = 0; i < boardSize; i++) {
+            out[i] = ids[i].clone();
+        }
+        return out;
+    }
+
+    public String getSolver() {
+        return solver;
+    }
+
+    public int getSolveTime() {
+        return solveTime;
+    }
+
+    public byte[] getSequence() {
+        return sequence.clone();
+    }
+
+    public int getMoves() {
+        return moves;
+    }
+
+    public int getResyncs() {
+        return resyncs;
+    }
+
+    public boolean isSolved() {
+        return solved;
+    }
+
+    /**
+     * Время этапа за игру
+     * @param stage этап
+     * @return время, нс; 0 - не замерялось
+     */
+    public long getTiming(Metrics.Stage stage) {
+        return timings[stage.ordinal()];
+    }
+
+    /**
+     * Номера цветов ячеек по палитре, цвета не из палитры - -1
+     * @param table цвета ячеек
+     * @param palette палитра
+     * @return номера [строка][столбец]
+     */
+    static byte[][] toIds(int[][] table, int[] palette) {
+        int size = table.length;
+        byte[][] out = new byte[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                int k = 0;
+                while ((k < palette.length) && (palette[k] != table[i][j])) k++;
+                out[i][j] = (byte) ((k < palette.length) ? k : -1);
+            }
+        }
+        return out;
+    }
+}
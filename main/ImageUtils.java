@@ -2,7 +2,19 @@ package main;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Класс обработки изображений
@@ -12,9 +24,28 @@ public class ImageUtils {
     
     /* За сколько точек мы будем узнавать преобладающий фон */
     private static final int MAX_COLOR_POINTS = 50;
+    /* Начальное значение для выбора этих точек */
+    private static final long BACKGROUND_SEED = 136380;
     
     /* Чувствительность к поиску кнопок */
-    private static final int FIND_BUTTON_TOLERANCE = 20;
+    static final int FIND_BUTTON_TOLERANCE = 20;
+    /* Чувствительность к различию цветов ячеек */
+    private static final int CELL_TOLERANCE = 20;
+    /* Точность каналов в таблице цветов кнопок, бит */
+    private static final int COLOR_TABLE_BITS = 5;
+    /* Сколько цветов кнопок можно искать: кандидаты хранятся битовой маской int */
+    static final int MAX_BUTTON_COLORS = Integer.SIZE;
+    
+    /* С какого размера изображения, в пикселях, обрабатывать его параллельно */
+    private static final long PARALLEL_MIN_PIXELS = 1 << 20;
+    /* Размер полосы строк, обрабатываемой одним потоком без деления */
+    private static final long STRIPE_PIXELS = 1 << 18;
+    /* Общий пул потоков для обработки изображений */
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+    /* Подключён ли Vector API и есть ли от него выигрыш, см. VectorProjection.
+       Без модуля класс VectorProjection не загружается */
+    private static final boolean VECTOR_AVAILABLE =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent() && VectorProjection.isUseful();
     
     /* Изображение окна */
     private BufferedImage image;
@@ -26,8 +57,10 @@ public class ImageUtils {
     private int cellSize;
     /* Координата угла игрового поля */
     private Point board;
-    /* Монохромное представление изображения */
-    private boolean[] monochrome;
+    /* Обрабатывать ли большие изображения параллельно */
+    private boolean parallel = true;
+    /* Считать ли точки через Vector API, если он доступен */
+    private boolean vector = true;
     
     /**
      * Конструктор для определения настроек
@@ -58,6 +91,33 @@ public class ImageUtils {
         h = image.getHeight();
     }
     
+    /**
+     * Включить или выключить параллельную обработку больших изображений.
+     * Результат от этого не зависит
+     * @param parallel true - делить изображение на полосы по потокам
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+    
+    /**
+     * Включить или выключить подсчёт точек через Vector API.
+     * Без модуля jdk.incubator.vector подсчёт всегда скалярный,
+     * результат от этого не зависит
+     * @param vector true - использовать Vector API, если он доступен
+     */
+    public void setVector(boolean vector) {
+        this.vector = vector;
+    }
+    
+    /**
+     * Доступен ли подсчёт точек через Vector API
+     * @return true - модуль jdk.incubator.vector подключён
+     */
+    public static boolean isVectorAvailable() {
+        return VECTOR_AVAILABLE;
+    }
+    
     /**
      * Получить размер ячейки
      * @return 
@@ -66,15 +126,33 @@ public class ImageUtils {
         return cellSize;
     }
     
+    /**
+     * Получить заданные или найденные координаты игрового поля
+     * @return точка с координатами левого верхнего угла поля
+     */
+    public Point getBoardPoint() {
+        return board;
+    }
+    
+    /**
+     * Получить исходное изображение
+     * @return снимок, с которым работает обработчик
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+    
     /**
      * Получить координаты игрового поля
      * @return точка с координатами левого верхнего угла поля
      */
     public Point getBoardParameters() {
-        int[] pixels = new int[w * h];
-        image.getRGB(0, 0, w, h, pixels, 0, w);
-        monochrome = threshold(pixels, 64);
-        board = getBoardXY(boardSize);
+        StageEvent event = Metrics.start(Metrics.Stage.DETECT);
+        int[] horizontal = new int[h];
+        int[] vertical = new int[w];
+        project(64, horizontal, vertical);
+        board = getBoardXY(boardSize, horizontal, vertical);
+        Metrics.record(event);
         return board;
     }
     
@@ -91,13 +169,85 @@ public class ImageUtils {
         }
     }
     
+    /**
+     * Получить цвета ячеек игрового поля.
+     * В каждой ячейке просматривается квадрат вокруг центра, цвета его
+     * точек делятся на группы близких цветов, и ячейке достаётся
+     * группа большинства точек. Так сглаживание краёв, градиенты
+     * и надписи на ячейках не дают лишних цветов.
+     * @return массив цветов [строка][столбец], цвет ячейки - средний цвет её группы
+     */
+    public int[][] getBoardColors() {
+        StageEvent event = Metrics.start(Metrics.Stage.CLASSIFY);
+        PaletteClassifier classifier = new PaletteClassifier(CELL_TOLERANCE);
+        int[][] groups = new int[boardSize][boardSize];
+        int[] row = new int[Math.max(1, cellSize)];
+        int[] votes = new int[8];
+        for (int i = 0; i < boardSize; i++) {
+            for (int j = 0; j < boardSize; j++) {
+                Rectangle rect = getCellPatch(i, j);
+                for (int y = rect.y; y < rect.y + rect.height; y++) {
+                    readRow(rect.x, y, rect.width, row);
+                    for (int x = 0; x < rect.width; x++) {
+                        int group = classifier.classify(row[x]);
+                        if (group >= votes.length) {
+                            votes = Arrays.copyOf(votes, Math.max(group + 1, votes.length * 2));
+                        }
+                        votes[group]++;
+                    }
+                }
+                // Побеждает самая многочисленная группа, при равенстве - найденная раньше
+                int best = 0;
+                for (int k = 0; k < classifier.getGroupsCount(); k++) {
+                    if (votes[k] > votes[best]) best = k;
+                }
+                groups[i][j] = best;
+                Arrays.fill(votes, 0);
+            }
+        }
+        int[][] table = new int[boardSize][boardSize];
+        for (int i = 0; i < boardSize; i++) {
+            for (int j = 0; j < boardSize; j++) {
+                table[i][j] = classifier.getColor(groups[i][j]);
+            }
+        }
+        Metrics.record(event);
+        return table;
+    }
+    
+    /**
+     * Проверить цвет одной ячейки: больше половины точек
+     * в квадрате вокруг центра должны быть близки к color
+     * @param i строка
+     * @param j столбец
+     * @param color ожидаемый цвет
+     * @return true - ячейка этого цвета
+     */
+    public boolean isCellColor(int i, int j, int color) {
+        Rectangle rect = getCellPatch(i, j);
+        int[] row = new int[rect.width];
+        int matched = 0;
+        for (int y = rect.y; y < rect.y + rect.height; y++) {
+            readRow(rect.x, y, rect.width, row);
+            for (int x = 0; x < rect.width; x++) {
+                if (isEquals(row[x], color, CELL_TOLERANCE)) matched++;
+            }
+        }
+        return 2 * matched > rect.width * rect.height;
+    }
+    
     /**
      * Получить координаты кнопок для автоматического нажатия
-     * @param colors массив цветов, по которым будем искать кнопки
+     * @param colors массив цветов, по которым будем искать кнопки, не больше MAX_BUTTON_COLORS
      * @return массив координат с точками, или null - если не удалось найти
+     * @throws IllegalArgumentException если цветов больше MAX_BUTTON_COLORS
      */
     public Point[] getButtons(int[] colors) {
-        Point[] out = new Point[colors.length];
+        if (colors.length > MAX_BUTTON_COLORS) {
+            throw new IllegalArgumentException("Too many button colors: " + colors.length
+                    + ", at most " + MAX_BUTTON_COLORS);
+        }
+        StageEvent event = Metrics.start(Metrics.Stage.DETECT);
         // Размер игрового поля в пикселах
         int size = boardSize * cellSize;
         // Размеры частей изображения, на которых будем искать кнопки
@@ -109,28 +259,14 @@ public class ImageUtils {
             new Rectangle(0, board.y+size,
                           w, h-board.y-size)            // снизу от поля
         };
-        
-        for (int i = 0; i < partsOfImage.length; i++) {
-            Rectangle rect = partsOfImage[i];
-            BufferedImage part = image.getSubimage(rect.x, rect.y, rect.width, rect.height);
-            // Вырезаем часть изображения, в котором будем искать
-            boolean found = true;
-            for (int j = 0; j < colors.length; j++) {
-                if (colors[i] == -1) continue;
-                Point pt = findButton(part, colors[j]);
-                if (pt != null) {
-                    // Учитываем смещения относительно частей картинок
-                    pt.translate(rect.x, rect.y);
-                    out[j] = pt;
-                } else {
-                    found = false;
-                    break;
-                }
-            }
-            if (found) return out;
+        int[] colorTable = createColorTable(colors);
+        Point[] out = null;
+        for (int i = 0; (i < partsOfImage.length) && (out == null); i++) {
+            out = findButtons(partsOfImage[i], colors, colorTable);
         }
-        // Не удалось найти все точки
-        return null;
+        Metrics.record(event);
+        // null - не удалось найти все точки
+        return out;
     }
     
     /**
@@ -159,24 +295,253 @@ public class ImageUtils {
         return out;
     }
     
+    /*
+     * Квадрат в половину ячейки вокруг её центра - он не задевает
+     * границы между ячейками. Если ячейка за пределами изображения,
+     * берётся ближайшая к центру точка
+     */
+    private Rectangle getCellPatch(int i, int j) {
+        int patch = Math.max(1, cellSize / 2);
+        int inset = (cellSize - patch) / 2;
+        Rectangle rect = new Rectangle(board.x + j*cellSize + inset,
+                                       board.y + i*cellSize + inset, patch, patch);
+        rect = rect.intersection(new Rectangle(0, 0, w, h));
+        if (rect.isEmpty()) {
+            int x = Math.min(Math.max(board.x + j*cellSize + cellSize / 2, 0), w - 1);
+            int y = Math.min(Math.max(board.y + i*cellSize + cellSize / 2, 0), h - 1);
+            rect = new Rectangle(x, y, 1, 1);
+        }
+        return rect;
+    }
+    
+    /**
+     * Прочитать width точек строки y начиная с x.
+     * Пиксели читаются прямо из растра, если его формат известен
+     * @param row сюда записываются цвета RGB
+     */
+    private void readRow(int x, int y, int width, int[] row) {
+        Raster raster = image.getRaster();
+        SampleModel model = raster.getSampleModel();
+        DataBuffer buffer = raster.getDataBuffer();
+        ColorModel colorModel = image.getColorModel();
+        if ((buffer instanceof DataBufferInt) && (model instanceof SinglePixelPackedSampleModel)
+                && isPackedRGB(colorModel) && (((DirectColorModel) colorModel).getRedMask() == 0xFF0000)
+                && (((DirectColorModel) colorModel).getBlueMask() == 0xFF)) {
+            // Каналы должны идти в порядке RGB, как у getRGB
+            SinglePixelPackedSampleModel packed = (SinglePixelPackedSampleModel) model;
+            int[] data = ((DataBufferInt) buffer).getData();
+            int pos = buffer.getOffset() + packed.getOffset(
+                    x - raster.getSampleModelTranslateX(), y - raster.getSampleModelTranslateY());
+            for (int i = 0; i < width; i++) {
+                row[i] = 0xFF000000 | data[pos + i];
+            }
+        } else if ((buffer instanceof DataBufferByte) && (model instanceof ComponentSampleModel)
+                && isInterleavedRGB(colorModel, model)) {
+            ComponentSampleModel component = (ComponentSampleModel) model;
+            byte[] data = ((DataBufferByte) buffer).getData();
+            int pixelStride = component.getPixelStride();
+            int[] bands = component.getBandOffsets();
+            int pos = buffer.getOffset() + component.getOffset(
+                    x - raster.getSampleModelTranslateX(), y - raster.getSampleModelTranslateY()) - bands[0];
+            for (int i = 0; i < width; i++, pos += pixelStride) {
+                row[i] = 0xFF000000 | ((data[pos + bands[0]] & 0xff) << 16)
+                        | ((data[pos + bands[1]] & 0xff) << 8) | (data[pos + bands[2]] & 0xff);
+            }
+        } else {
+            image.getRGB(x, y, width, 1, row, 0, width);
+        }
+    }
+    
     /**
-     * Преобразовать цветное изображение в монохромное.
+     * Подсчитать количество белых точек монохромного изображения
+     * в каждой строке и в каждом столбце за один проход по строкам.
      * Нужно также учесть, что если поле расположено на светлом
      * фоне, то необходимо инвертировать изображение, чтобы
      * получить сплошную белую область на месте поля.
-     * @param pixels массив пикселей изображения
-     * @param value разделяющее значение
-     * @return массив boolean, true - белый, false - чёрный
+     * Пиксели читаются прямо из растра, если его формат известен.
+     * @param value разделяющее значение яркости
+     * @param horizontal сюда записывается количество белых точек в строках
+     * @param vertical сюда записывается количество белых точек в столбцах
+     */
+    private void project(int value, int[] horizontal, int[] vertical) {
+        project(value, parallel && (POOL.getParallelism() > 1) && ((long) w * h >= PARALLEL_MIN_PIXELS),
+                horizontal, vertical);
+    }
+    
+    /*
+     * Подсчёт белых точек полосами в общем пуле или одним проходом.
+     * Способ выбирается снаружи, чтобы способы можно было сравнить
+     * и там, где пул однопоточный
      */
-    private boolean[] threshold(int[] pixels, int value) {
+    void project(int value, boolean stripes, int[] horizontal, int[] vertical) {
         boolean inverse = isBackgroundLight(MAX_COLOR_POINTS);
         if (inverse) value = 255 - value;
-        boolean[] bw = new boolean[pixels.length];
-        for (int i = 0; i < pixels.length; i++) {
-            int brightNess = getBrightness(pixels[i]);
-            bw[i] = (brightNess >= value) ^ inverse;
+        // Яркость - среднее трёх каналов, поэтому сравниваем сумму каналов
+        int sumThreshold = value * 3;
+        if (stripes) {
+            POOL.invoke(new ProjectTask(0, h, sumThreshold, inverse, horizontal, vertical));
+        } else {
+            projectRows(0, h, sumThreshold, inverse, horizontal, vertical);
         }
-        return bw;
+    }
+    
+    /**
+     * Подсчёт белых точек в строках [fromY, toY).
+     * Количество в строках записывается в horizontal,
+     * количество в столбцах добавляется к vertical
+     */
+    private void projectRows(int fromY, int toY, int sumThreshold, boolean inverse,
+                             int[] horizontal, int[] vertical) {
+        Raster raster = image.getRaster();
+        SampleModel model = raster.getSampleModel();
+        DataBuffer buffer = raster.getDataBuffer();
+        // Без ветвлений: знак (sum - sumThreshold) даёт 1 для тёмной точки,
+        // keep превращает его в 1 для белой с учётом инверсии.
+        // Такой цикл JIT может обработать векторными инструкциями
+        int keep = inverse ? 0 : 1;
+        if ((buffer instanceof DataBufferInt) && (model instanceof SinglePixelPackedSampleModel)
+                && isPackedRGB(image.getColorModel())) {
+            SinglePixelPackedSampleModel packed = (SinglePixelPackedSampleModel) model;
+            int[] data = ((DataBufferInt) buffer).getData();
+            int stride = packed.getScanlineStride();
+            int start = buffer.getOffset() + packed.getOffset(
+                    -raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+            if (vector && VECTOR_AVAILABLE) {
+                VectorProjection.projectRows(data, start, stride, w, fromY, toY,
+                        sumThreshold, keep, horizontal, vertical);
+                return;
+            }
+            for (int y = fromY; y < toY; y++) {
+                int pos = start + y * stride;
+                int count = 0;
+                for (int x = 0; x < w; x++) {
+                    int color = data[pos + x];
+                    int sum = ((color >> 16) & 0xff) + ((color >> 8) & 0xff) + (color & 0xff);
+                    int white = ((sum - sumThreshold) >>> 31) ^ keep;
+                    count += white;
+                    vertical[x] += white;
+                }
+                horizontal[y] = count;
+            }
+        } else if ((buffer instanceof DataBufferByte) && (model instanceof ComponentSampleModel)
+                && isInterleavedRGB(image.getColorModel(), model)) {
+            ComponentSampleModel component = (ComponentSampleModel) model;
+            byte[] data = ((DataBufferByte) buffer).getData();
+            int stride = component.getScanlineStride();
+            int pixelStride = component.getPixelStride();
+            int[] bands = component.getBandOffsets();
+            int start = buffer.getOffset() + component.getOffset(
+                    -raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY()) - bands[0];
+            int b0 = bands[0], b1 = bands[1], b2 = bands[2];
+            for (int y = fromY; y < toY; y++) {
+                int pos = start + y * stride;
+                int count = 0;
+                for (int x = 0; x < w; x++, pos += pixelStride) {
+                    int sum = (data[pos + b0] & 0xff) + (data[pos + b1] & 0xff) + (data[pos + b2] & 0xff);
+                    int white = ((sum - sumThreshold) >>> 31) ^ keep;
+                    count += white;
+                    vertical[x] += white;
+                }
+                horizontal[y] = count;
+            }
+        } else {
+            // Формат растра неизвестен, читаем по одной строке
+            int[] row = new int[w];
+            for (int y = fromY; y < toY; y++) {
+                image.getRGB(0, y, w, 1, row, 0, w);
+                int count = 0;
+                for (int x = 0; x < w; x++) {
+                    if ((getBrightness(row[x]) * 3 >= sumThreshold) ^ inverse) {
+                        count++;
+                        vertical[x]++;
+                    }
+                }
+                horizontal[y] = count;
+            }
+        }
+    }
+    
+    /*
+     * Подсчёт белых точек в полосе строк. Полосы считаются параллельно,
+     * у каждой своя сумма по столбцам, затем суммы складываются.
+     * Целочисленные суммы не зависят от порядка, поэтому результат
+     * совпадает с последовательным подсчётом
+     */
+    private class ProjectTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int fromY, toY;
+        private final int sumThreshold;
+        private final boolean inverse;
+        private final int[] horizontal, vertical;
+
+        ProjectTask(int fromY, int toY, int sumThreshold, boolean inverse,
+                    int[] horizontal, int[] vertical) {
+            this.fromY = fromY;
+            this.toY = toY;
+            this.sumThreshold = sumThreshold;
+            this.inverse = inverse;
+            this.horizontal = horizontal;
+            this.vertical = vertical;
+        }
+
+        @Override
+        protected void compute() {
+            if ((long) (toY - fromY) * w <= STRIPE_PIXELS) {
+                projectRows(fromY, toY, sumThreshold, inverse, horizontal, vertical);
+                return;
+            }
+            int middle = (fromY + toY) >>> 1;
+            int[] rightVertical = new int[w];
+            ProjectTask right = new ProjectTask(middle, toY, sumThreshold, inverse, horizontal, rightVertical);
+            right.fork();
+            new ProjectTask(fromY, middle, sumThreshold, inverse, horizontal, vertical).compute();
+            right.join();
+            for (int x = 0; x < w; x++) {
+                vertical[x] += rightVertical[x];
+            }
+        }
+    }
+    
+    /**
+     * Проверка, что пиксель упакован в int по 8 бит на канал
+     * и getRGB вернул бы каналы без преобразований
+     * @param model цветовая модель изображения
+     * @return true - каналы можно читать напрямую
+     */
+    private boolean isPackedRGB(ColorModel model) {
+        if (!(model instanceof DirectColorModel) || model.isAlphaPremultiplied()) return false;
+        if (!model.getColorSpace().isCS_sRGB()) return false;
+        DirectColorModel direct = (DirectColorModel) model;
+        int masks = direct.getRedMask() | direct.getGreenMask() | direct.getBlueMask();
+        return (masks == 0xFFFFFF) && isByteMask(direct.getRedMask())
+                && isByteMask(direct.getGreenMask()) && isByteMask(direct.getBlueMask());
+    }
+    
+    /**
+     * Проверка, что каналы R, G, B хранятся в отдельных байтах
+     * и getRGB вернул бы их без преобразований
+     * @param model цветовая модель изображения
+     * @param sampleModel модель размещения пикселей
+     * @return true - каналы можно читать напрямую
+     */
+    private boolean isInterleavedRGB(ColorModel model, SampleModel sampleModel) {
+        if (model.isAlphaPremultiplied() || !model.getColorSpace().isCS_sRGB()) return false;
+        if ((model.getNumColorComponents() != 3) || (sampleModel.getNumBands() < 3)) return false;
+        for (int i = 0; i < 3; i++) {
+            if (model.getComponentSize(i) != 8) return false;
+        }
+        // Все каналы должны лежать в одном массиве
+        int[] banks = ((ComponentSampleModel) sampleModel).getBankIndices();
+        for (int i = 0; i < banks.length; i++) {
+            if (banks[i] != 0) return false;
+        }
+        return true;
+    }
+    
+    private boolean isByteMask(int mask) {
+        return (mask == 0xFF0000) || (mask == 0xFF00) || (mask == 0xFF);
     }
     
     /**
@@ -186,7 +551,8 @@ public class ImageUtils {
      */
     private boolean isBackgroundLight(int numPoints) {
         // Получаем numPoints случайных точек
-        Random rnd = new Random();
+        // Точки выбираются одинаково при каждом вызове, чтобы результат был воспроизводим
+        Random rnd = new Random(BACKGROUND_SEED);
         int[] colors = new int[numPoints];
         for (int i = 0; i < numPoints; i++) {
             int x = rnd.nextInt(w);
@@ -206,30 +572,11 @@ public class ImageUtils {
     /**
      * Определить координаты левой верхней ячейки игрового поля.
      * @param boardSize размерность поля (10x10, 14x14 и т.д.)
+     * @param horizontal количество белых точек в каждой строке
+     * @param vertical количество белых точек в каждом столбце
      * @return координата левого верхнего прямоугольника
      */
-    private Point getBoardXY(int boardSize) {
-        /*
-         * Сначала подсчитаем количество белых точек по горизонтали и вертикали
-         */
-        int[] horizontal = new int[h];
-        for (int i = 0; i < h; i++) {
-            int count = 0;
-            for (int j = 0; j < w; j++) {
-                if (getBWPixel(j, i)) count++;
-            }
-            horizontal[i] = count;
-        }
-
-        int[] vertical = new int[w];
-        for (int i = 0; i < w; i++) {
-            int count = 0;
-            for (int j = 0; j < h; j++) {
-                if (getBWPixel(i, j)) count++;
-            }
-            vertical[i] = count;
-        }
-        
+    private Point getBoardXY(int boardSize, int[] horizontal, int[] vertical) {
         /*
          * Затем "отфильтруем" лишнее: подсчитаем среднее значение
          * и на его основе уберём малозначимые строки и столбцы.
@@ -279,44 +626,97 @@ public class ImageUtils {
     private int[] getParamsFromSequence(int[] source) {
         int maxStart = 0, start = 0;
         int maxLength = 0, length = 0;
-        for (int i = 1; i < source.length; i++) {
+        for (int i = 0; i < source.length; i++) {
             if (source[i] == 0) {
-                start = 0;
                 length = 0;
                 continue;
             }
-            if (source[i] == source[i-1]) {
-                length++;
-                if (maxLength < length) {
-                    maxStart = start;
-                    maxLength = length;
-                }
-            } else {
-                // Если предыдущий элемент был нулевым - начинаем новую последовательность
-                start = i;
+            // После нулевого элемента начинаем новую последовательность
+            if (length == 0) start = i;
+            length++;
+            if (maxLength < length) {
+                maxStart = start;
+                maxLength = length;
             }
         }
         return new int[] {maxStart, maxLength};
     }
     
     /**
-     * Поиск координаты кнопки с цветом template
-     * @param img изображение, на котором будем искать
-     * @param template шаблон цвета
-     * @return координата X. Y, или null если не нашли
+     * Таблица соответствия квантованного цвета номерам цветов палитры.
+     * Для каждого цвета с уменьшенной до COLOR_TABLE_BITS бит точностью
+     * каналов хранится маска цветов палитры, которые с учётом
+     * FIND_BUTTON_TOLERANCE могут с ним совпасть. Точное сравнение
+     * после этого нужно только для кандидатов из маски.
+     * @param colors цвета палитры, -1 - пропускается
+     * @return таблица масок
      */
-    private Point findButton(BufferedImage img, int template) {
-        int h2 = img.getHeight() / 2;
+    private int[] createColorTable(int[] colors) {
+        int shift = 8 - COLOR_TABLE_BITS;
+        int[] table = new int[1 << (3 * COLOR_TABLE_BITS)];
+        for (int j = 0; j < colors.length; j++) {
+            if (colors[j] == -1) continue;
+            int[] from = new int[3], to = new int[3];
+            for (int c = 0; c < 3; c++) {
+                int value = (colors[j] >> (16 - 8 * c)) & 0xff;
+                from[c] = Math.max(0, value - FIND_BUTTON_TOLERANCE) >> shift;
+                to[c] = Math.min(255, value + FIND_BUTTON_TOLERANCE) >> shift;
+            }
+            for (int r = from[0]; r <= to[0]; r++) {
+                for (int g = from[1]; g <= to[1]; g++) {
+                    for (int b = from[2]; b <= to[2]; b++) {
+                        table[(((r << COLOR_TABLE_BITS) | g) << COLOR_TABLE_BITS) | b] |= 1 << j;
+                    }
+                }
+            }
+        }
+        return table;
+    }
+    
+    /**
+     * Поиск кнопок всех цветов за один проход по части изображения.
+     * Строки просматриваются от середины по вертикали к краям,
+     * для каждого цвета запоминается первое совпадение.
+     * @param rect часть изображения, в которой ищем
+     * @param colors цвета кнопок, не больше MAX_BUTTON_COLORS
+     * @param colorTable таблица из createColorTable
+     * @return координаты кнопок или null, если хотя бы одна не найдена
+     */
+    private Point[] findButtons(Rectangle rect, int[] colors, int[] colorTable) {
+        rect = rect.intersection(new Rectangle(0, 0, w, h));
+        if (rect.isEmpty()) return null;
+        Point[] out = new Point[colors.length];
+        int remaining = 0;
+        for (int j = 0; j < colors.length; j++) {
+            if (colors[j] != -1) remaining++;
+        }
+        if (remaining == 0) return out;
+        int shift = 8 - COLOR_TABLE_BITS;
+        int mask = (1 << COLOR_TABLE_BITS) - 1;
+        int width = rect.width;
+        int[] upper = new int[width];
+        int[] lower = new int[width];
+        int h2 = rect.height / 2;
         // Искать будем с середины по вертикали, так быстрее найдём
         for (int y = 0; y < h2; y++) {
-            for (int x = 0; x < img.getWidth(); x++) {
-                int color = img.getRGB(x, h2 - y);
-                if (isEquals(color, template, FIND_BUTTON_TOLERANCE)) {
-                    return new Point(x, h2 - y);
-                }
-                color = img.getRGB(x, h2 + y);
-                if (isEquals(color, template, FIND_BUTTON_TOLERANCE)) {
-                    return new Point(x, h2 + y);
+            int upperY = h2 - y, lowerY = h2 + y;
+            image.getRGB(rect.x, rect.y + upperY, width, 1, upper, 0, width);
+            image.getRGB(rect.x, rect.y + lowerY, width, 1, lower, 0, width);
+            for (int x = 0; x < width; x++) {
+                for (int k = 0; k < 2; k++) {
+                    int color = (k == 0) ? upper[x] : lower[x];
+                    int index = ((((color >> (16 + shift)) & mask) << COLOR_TABLE_BITS
+                            | ((color >> (8 + shift)) & mask)) << COLOR_TABLE_BITS)
+                            | ((color >> shift) & mask);
+                    int candidates = colorTable[index];
+                    while (candidates != 0) {
+                        int j = Integer.numberOfTrailingZeros(candidates);
+                        candidates &= candidates - 1;
+                        if ((out[j] == null) && isEquals(color, colors[j], FIND_BUTTON_TOLERANCE)) {
+                            out[j] = new Point(rect.x + x, rect.y + ((k == 0) ? upperY : lowerY));
+                            if (--remaining == 0) return out;
+                        }
+                    }
                 }
             }
         }
@@ -331,7 +731,7 @@ public class ImageUtils {
      * @param tolerance чувствительность
      * @return true - соответствуют, false - нет
      */
-    private boolean isEquals(int color1, int color2, int tolerance) {
+    static boolean isEquals(int color1, int color2, int tolerance) {
         if (tolerance < 2) return color1 == color2;
 
         int r1 = (color1 >> 16) & 0xff;
@@ -356,14 +756,5 @@ public class ImageUtils {
         int qb = color & 0xff;
         return (qr + qg + qb) / 3;
     }
-    
-    /*
-     * Получение цвета из монохромного изображения.
-     * return true - белый, false - чёрный
-     */
-    private boolean getBWPixel(int x, int y) {
-        if ((x < 0) || (y < 0) || (x >= w) || (y >= h)) return false;
-        return monochrome[y * w + x];
-    }
 
 }
\ No newline at end of file
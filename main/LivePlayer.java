@@ -0,0 +1,540 @@
+package main;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Игра с проверкой каждого хода.
+ * После нажатия захватывается только прямоугольник, в который попадают
+ * ячейки, которые должны были перекраситься, и проверяются лишь они. Если поле
+ * на экране не совпадает с ожидаемым (нажатие потерялось, игра
+ * не успела отрисовать ход), оно считывается целиком
+ * и последовательность просчитывается заново от увиденного состояния.
+ * В адаптивном режиме кнопка не удерживается фиксированное время:
+ * после короткого нажатия опрашиваются несколько перекрашиваемых ячеек,
+ * и следующий ход делается, как только они сменили цвет.
+ * Последовательность может поступать от решателя по мере просчёта:
+ * решатель в отдельном потоке кладёт ходы в очередь, а игра
+ * забирает их оттуда, не дожидаясь конца просчёта.
+ * @author aNNiMON
+ */
+public class LivePlayer {
+
+    /* Сколько раз проверять поле после хода, пока игра его не отрисует */
+    private static final int VERIFY_ATTEMPTS = 10;
+    /* Пауза между проверками, мс */
+    private static final int VERIFY_DELAY = 30;
+    /* Сколько раз можно просчитывать последовательность заново */
+    private static final int MAX_RESYNCS = 10;
+    /* Время на просчёт после рассинхронизации, мс */
+    private static final long RESYNC_SOLVE_TIME = 300;
+    /* Сколько держать кнопку в адаптивном режиме, мс */
+    private static final int CLICK_HOLD = 20;
+    /* Сколько перекрашиваемых ячеек опрашивать */
+    private static final int PROBE_CELLS = 4;
+    /* Пауза между опросами, мс */
+    private static final int POLL_DELAY = 5;
+    /* Сколько ждать перекраски, прежде чем нажать ещё раз, мс */
+    private static final long CHANGE_TIMEOUT = 400;
+    /* Сколько раз повторять нажатие, если поле не изменилось */
+    private static final int CLICK_RETRIES = 2;
+    /* Сколько ходов решатель может просчитать впрок */
+    private static final int MOVE_QUEUE_SIZE = 64;
+    /* Признак конца последовательности в очереди */
+    private static final byte END_OF_MOVES = -1;
+
+    /**
+     * Источник ходов
+     */
+    private interface MoveSource {
+
+        /**
+         * Следующий ход
+         * @return идентификатор цвета или END_OF_MOVES, если ходов больше нет
+         */
+        byte next();
+
+        /**
+         * Ходы больше не нужны
+         */
+        void close();
+    }
+
+    private final CaptureSession session;
+    /* Кнопки и цвета палитры, номер кнопки - идентификатор цвета */
+    private final Point[] buttons;
+    private final int[] colors;
+    private volatile boolean stopped;
+    /* Ждать перекраски вместо фиксированной задержки */
+    private boolean adaptive;
+    /* Общая очередь нажатий, null - нажимать напрямую */
+    private ClickDispatcher dispatcher;
+    /* Статистика игры */
+    private long moves, checks, checkedCells, resyncs, polls, retries;
+    private long captureNanos, compareNanos;
+    /* Ходы первого просчёта, сыгранные до рассинхронизации */
+    private byte[] initialMoves;
+    private int initialCount;
+    /* Время от начала игры до первого нажатия, нс */
+    private long firstClickNanos;
+
+    /**
+     * @param session захват экрана
+     * @param buttons координаты кнопок для каждого цвета
+     * @param colors цвета палитры, -1 - цвета нет
+     */
+    public LivePlayer(CaptureSession session, Point[] buttons, int[] colors) {
+        this.session = session;
+        this.buttons = buttons;
+        this.colors = colors;
+        adaptive = true;
+        initialMoves = new byte[MOVE_QUEUE_SIZE];
+    }
+
+    /**
+     * Включить или выключить адаптивный темп нажатий
+     * @param adaptive true - ждать перекраски поля,
+     *        false - держать кнопку фиксированное время, как RobotUtils.clickPoint
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Нажимать через общую очередь, если одновременно идёт игра на нескольких полях
+     * @param dispatcher очередь нажатий, null - нажимать напрямую
+     */
+    public void setDispatcher(ClickDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Сыграть последовательность, проверяя поле после каждого хода
+     * @param table цвета ячеек поля перед первым ходом
+     * @param sequence идентификаторы цветов из палитры colors
+     * @return true - поле залито, false - игра остановлена
+     *         или поле на экране не удалось распознать
+     */
+    public boolean play(int[][] table, byte[] sequence) {
+        return play(table, createSource(sequence));
+    }
+
+    /**
+     * Сыграть, получая ходы от решателя по мере просчёта.
+     * Решатель работает в отдельном потоке и может опережать игру
+     * не больше чем на MOVE_QUEUE_SIZE ходов
+     * @param table цвета ячеек поля перед первым ходом
+     * @param solver решатель для этого поля, его палитра - colors
+     * @return true - поле залито, false - игра остановлена
+     *         или поле на экране не удалось распознать
+     */
+    public boolean play(int[][] table, final BotFloodIt solver) {
+        final BlockingQueue<Byte> queue = new ArrayBlockingQueue<Byte>(MOVE_QUEUE_SIZE);
+        final Thread producer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    solver.getFillSequence(new BotFloodIt.MoveListener() {
+
+                        @Override
+                        public boolean onMove(byte color) {
+                            try {
+                                queue.put(color);
+                                return true;
+                            } catch (InterruptedException ex) {
+                                // Игре ходы больше не нужны
+                                Thread.currentThread().interrupt();
+                                return false;
+                            }
+                        }
+                    });
+                } finally {
+                    try {
+                        if (!Thread.currentThread().isInterrupted()) queue.put(END_OF_MOVES);
+                    } catch (InterruptedException ex) {
+                        // Игра уже закончилась, конец последовательности не нужен
+                    }
+                }
+            }
+        }, "solver");
+        producer.setDaemon(true);
+        producer.start();
+        return play(table, new MoveSource() {
+
+            @Override
+            public byte next() {
+                try {
+                    Byte color;
+                    do {
+                        color = queue.poll(POLL_DELAY, TimeUnit.MILLISECONDS);
+                    } while ((color == null) && !stopped);
+                    return (color == null) ? END_OF_MOVES : color.byteValue();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return END_OF_MOVES;
+                }
+            }
+
+            @Override
+            public void close() {
+                producer.interrupt();
+            }
+        });
+    }
+
+    /*
+     * Игра с записью результата в общие показатели. Время ходов
+     * и перекраски записывается в этапы MOVE и CHANGE по ходу игры
+     */
+    private boolean play(int[][] table, MoveSource source) {
+        boolean solved = playVerified(table, source);
+        Metrics.recordGame(moves, retries, polls, solved);
+        return solved;
+    }
+
+    /*
+     * Игра с проверкой после каждого хода.
+     * После рассинхронизации ходы берутся из нового просчёта
+     */
+    private boolean playVerified(int[][] table, MoveSource source) {
+        long startTime = System.nanoTime();
+        firstClickNanos = -1;
+        FloodBoard expected = toBoard(table);
+        if (expected == null) {
+            source.close();
+            return false;
+        }
+        int size = expected.getWidth();
+        byte[] before = new byte[size * size];
+        int[] changed = new int[size * size];
+        try {
+            while (!stopped && !expected.isCompleted()) {
+                byte color = source.next();
+                if (color != END_OF_MOVES) {
+                    if (resyncs == 0) addInitialMove(color);
+                    save(expected, before);
+                    expected.fill(color);
+                    int changedCount = getChangedCells(expected, before, changed);
+                    StageEvent event = Metrics.start(Metrics.Stage.MOVE);
+                    if (firstClickNanos < 0) firstClickNanos = event.startNanos - startTime;
+                    boolean clicked;
+                    if (adaptive) {
+                        clicked = clickAndWait(buttons[color], expected, changed, changedCount);
+                    } else {
+                        click(buttons[color], RobotUtils.CLICK_DELAY);
+                        clicked = true;
+                    }
+                    moves++;
+                    boolean verified = clicked && verify(expected, changed, changedCount);
+                    Metrics.record(event);
+                    if (verified) continue;
+                }
+                if (stopped) break;
+                // Поле не совпало с ожидаемым или последовательность кончилась раньше времени
+                if (resyncs == MAX_RESYNCS) return false;
+                resyncs++;
+                expected = observe();
+                if (expected == null) return false;
+                source.close();
+                source = createSource(solve(expected));
+            }
+        } finally {
+            source.close();
+        }
+        return !stopped;
+    }
+
+    /**
+     * Остановить игру после текущего хода
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Ходы первого просчёта, сыгранные до первой рассинхронизации.
+     * Если рассинхронизаций не было - вся последовательность решателя
+     * @return идентификаторы цветов
+     */
+    public byte[] getInitialMoves() {
+        return Arrays.copyOf(initialMoves, initialCount);
+    }
+
+    /**
+     * Время от начала игры до первого нажатия, мс, -1 - нажатий не было
+     */
+    public double getTimeToFirstClick() {
+        return (firstClickNanos < 0) ? -1 : firstClickNanos / 1e6;
+    }
+
+    public long getMoves() {
+        return moves;
+    }
+
+    public long getResyncs() {
+        return resyncs;
+    }
+
+    /**
+     * Сколько раз нажатие повторялось, потому что поле не изменилось
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * Количество опросов ячеек в адаптивном режиме
+     */
+    public long getPolls() {
+        return polls;
+    }
+
+    /**
+     * Количество проверок поля после ходов
+     */
+    public long getChecks() {
+        return checks;
+    }
+
+    /**
+     * Сколько ячеек проверено за все проверки
+     */
+    public long getCheckedCells() {
+        return checkedCells;
+    }
+
+    /**
+     * Общее время захвата поля при проверках, нс
+     */
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+
+    /**
+     * Общее время сравнения ячеек при проверках, нс
+     */
+    public long getCompareNanos() {
+        return compareNanos;
+    }
+
+    /*
+     * Нажать кнопку и дождаться, пока первые из перекрашиваемых ячеек
+     * сменят цвет. Захватывается только прямоугольник этих ячеек.
+     * Если за CHANGE_TIMEOUT ничего не изменилось, нажатие повторяется:
+     * повтор того же цвета после хода ничего не меняет в игре
+     */
+    private boolean clickAndWait(Point button, FloodBoard expected, int[] changed, int changedCount) {
+        if (changedCount == 0) {
+            click(button, CLICK_HOLD);
+            return true;
+        }
+        int size = expected.getWidth();
+        // Первые по порядку ячейки лежат рядом, их прямоугольник невелик
+        int probes = Math.min(PROBE_CELLS, changedCount);
+        Rectangle area = getCellsArea(changed, probes, size);
+        for (int attempt = 0; attempt <= CLICK_RETRIES; attempt++) {
+            if (attempt > 0) retries++;
+            click(button, CLICK_HOLD);
+            // Событие без перекраски не записывается
+            StageEvent change = Metrics.start(Metrics.Stage.CHANGE);
+            long deadline = change.startNanos + CHANGE_TIMEOUT * 1000000L;
+            while (!stopped) {
+                ImageUtils iu = session.captureCells(area);
+                polls++;
+                boolean matches = true;
+                for (int k = 0; (k < probes) && matches; k++) {
+                    int pos = changed[k];
+                    matches = iu.isCellColor(pos / size, pos % size, colors[expected.getCell(pos % size, pos / size)]);
+                }
+                if (matches) {
+                    Metrics.record(change);
+                    return true;
+                }
+                if (System.nanoTime() - deadline >= 0) break;
+                sleep(POLL_DELAY);
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Нажать кнопку напрямую или через общую очередь.
+     * Если ожидание очереди прервано, игра останавливается
+     */
+    private void click(Point button, int holdDelay) {
+        if (dispatcher == null) {
+            session.getRobot().clickPoint(button, holdDelay);
+            return;
+        }
+        try {
+            dispatcher.click(button, holdDelay);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            stop();
+        }
+    }
+
+    /*
+     * Дождаться, пока перекрашенные ячейки на экране примут ожидаемый цвет.
+     * Захватывается только прямоугольник этих ячеек, а не всё поле
+     */
+    private boolean verify(FloodBoard expected, int[] changed, int changedCount) {
+        // Пустой ход ничего не меняет, проверять нечего
+        if (changedCount == 0) return true;
+        int size = expected.getWidth();
+        Rectangle area = getCellsArea(changed, changedCount, size);
+        for (int attempt = 0; attempt < VERIFY_ATTEMPTS; attempt++) {
+            if (attempt > 0) sleep(VERIFY_DELAY);
+            long start = System.nanoTime();
+            ImageUtils iu = session.captureCells(area);
+            long captured = System.nanoTime();
+            boolean matches = true;
+            int k = 0;
+            for (; (k < changedCount) && matches; k++) {
+                int pos = changed[k];
+                matches = iu.isCellColor(pos / size, pos % size, colors[expected.getCell(pos % size, pos / size)]);
+            }
+            checks++;
+            checkedCells += k;
+            captureNanos += captured - start;
+            compareNanos += System.nanoTime() - captured;
+            if (matches) return true;
+        }
+        return false;
+    }
+
+    private void addInitialMove(byte color) {
+        if (initialCount == initialMoves.length) {
+            initialMoves = Arrays.copyOf(initialMoves, initialCount * 2);
+        }
+        initialMoves[initialCount++] = color;
+    }
+
+    /*
+     * Считать поле с экрана целиком
+     */
+    private FloodBoard observe() {
+        for (int attempt = 0; attempt < VERIFY_ATTEMPTS; attempt++) {
+            if (attempt > 0) sleep(VERIFY_DELAY);
+            FloodBoard board = toBoard(session.captureBoard().getBoardColors());
+            if (board != null) return board;
+        }
+        return null;
+    }
+
+    /*
+     * Просчитать последовательность от состояния board
+     * в идентификаторах палитры colors
+     */
+    private byte[] solve(FloodBoard board) {
+        int size = board.getWidth();
+        int[][] table = new int[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                table[i][j] = colors[board.getCell(j, i)];
+            }
+        }
+        BotFloodIt bfi = new BotFloodIt(table);
+        byte[] sequence = bfi.getFillSequence(System.currentTimeMillis() + RESYNC_SOLVE_TIME, null);
+        // У нового решателя своя нумерация цветов
+        int[] solverColors = bfi.getColors();
+        for (int i = 0; i < sequence.length; i++) {
+            sequence[i] = (byte) indexOf(solverColors[sequence[i]]);
+        }
+        return sequence;
+    }
+
+    /*
+     * Поле из идентификаторов палитры, null - есть цвет не из палитры
+     */
+    private FloodBoard toBoard(int[][] table) {
+        int size = table.length;
+        byte[][] ids = new byte[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                int id = -1;
+                for (int k = 0; (k < colors.length) && (id == -1); k++) {
+                    if ((colors[k] != -1) && ImageUtils.isEquals(table[i][j], colors[k],
+                            ImageUtils.FIND_BUTTON_TOLERANCE)) {
+                        id = k;
+                    }
+                }
+                if ((id == -1) || (buttons[id] == null)) return null;
+                ids[i][j] = (byte) id;
+            }
+        }
+        return new FloodBoard(ids);
+    }
+
+    /*
+     * Источник ходов из готовой последовательности
+     */
+    private static MoveSource createSource(final byte[] sequence) {
+        return new MoveSource() {
+            private int step = 0;
+
+            @Override
+            public byte next() {
+                return (step < sequence.length) ? sequence[step++] : END_OF_MOVES;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private int indexOf(int color) {
+        for (int i = 0; i < colors.length; i++) {
+            if (colors[i] == color) return i;
+        }
+        return -1;
+    }
+
+    private static void save(FloodBoard board, byte[] cells) {
+        int size = board.getWidth();
+        for (int pos = 0; pos < cells.length; pos++) {
+            cells[pos] = board.getCell(pos % size, pos / size);
+        }
+    }
+
+    /*
+     * Номера ячеек, цвет которых отличается от сохранённого
+     */
+    private static int getChangedCells(FloodBoard board, byte[] before, int[] changed) {
+        int size = board.getWidth();
+        int count = 0;
+        for (int pos = 0; pos < before.length; pos++) {
+            if (board.getCell(pos % size, pos / size) != before[pos]) changed[count++] = pos;
+        }
+        return count;
+    }
+
+    /*
+     * Прямоугольник первых count ячеек из cells: x - столбец, y - строка
+     */
+    private static Rectangle getCellsArea(int[] cells, int count, int size) {
+        int minX = size, minY = size, maxX = -1, maxY = -1;
+        for (int k = 0; k < count; k++) {
+            int x = cells[k] % size, y = cells[k] / size;
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
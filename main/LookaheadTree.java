@@ -0,0 +1,166 @@
+package main;
+
+/**
+ * Дерево вариантов заливки, сохраняемое между ходами.
+ * Хранятся состояния после каждого префикса из levels-1 ходов,
+ * остальные ходы до глубины depth делаются и отменяются на состояниях
+ * нижнего уровня, последний ход оценивается по приросту.
+ * После хода сохраняется поддерево выбранного цвета, а заново
+ * заливается только нижний уровень.
+ * Номер префикса i совпадает с BotFloodIt.rateFills:
+ * цвет шага j равен i / colorsCount^j % colorsCount.
+ * @author aNNiMON
+ */
+public class LookaheadTree {
+
+    /* Количество цветов */
+    private final int colorsCount;
+    /* Глубина просчёта */
+    private final int depth;
+    /* Состояния на каждом уровне, на уровне k их colorsCount^k */
+    private final FloodState[][] levels;
+    private final FloodState[][] spare;
+    /* Освободившиеся после хода состояния */
+    private final FloodState[] free;
+    /* Количество залитых состояний с момента создания */
+    private long expandedNodes;
+
+    /**
+     * @param root текущее состояние, не изменяется
+     * @param colorsCount количество цветов в игре
+     * @param depth на сколько шагов вперёд просчитывать ход, не меньше двух
+     */
+    public LookaheadTree(FloodState root, int colorsCount, int depth) {
+        this(root, colorsCount, depth, depth);
+    }
+
+    /**
+     * Дерево, хранящее не все уровни просчёта
+     * @param root текущее состояние, не изменяется
+     * @param colorsCount количество цветов в игре
+     * @param depth на сколько шагов вперёд просчитывать ход, не меньше двух
+     * @param levelsCount сколько уровней хранить, от двух до depth
+     */
+    public LookaheadTree(FloodState root, int colorsCount, int depth, int levelsCount) {
+        this.colorsCount = colorsCount;
+        this.depth = depth;
+        levels = new FloodState[levelsCount][];
+        spare = new FloodState[levelsCount][];
+        int size = 1;
+        for (int k = 0; k < levels.length; k++) {
+            levels[k] = new FloodState[size];
+            spare[k] = new FloodState[size];
+            size *= colorsCount;
+        }
+        free = new FloodState[levels[levels.length - 1].length];
+        expandedNodes = 0;
+        levels[0][0] = root.copy();
+        for (int k = 1; k < levels.length; k++) {
+            fillLevel(k, null);
+        }
+    }
+
+    /**
+     * Количество состояний в дереве
+     * @param colorsCount количество цветов в игре
+     * @param levelsCount количество хранимых уровней
+     * @return сумма colorsCount^k по уровням k от 0 до levelsCount-1
+     */
+    public static long getStatesCount(int colorsCount, int levelsCount) {
+        long count = 0, size = 1;
+        for (int k = 0; k < levelsCount; k++) {
+            count += size;
+            size *= colorsCount;
+        }
+        return count;
+    }
+
+    /**
+     * Просчитать площади заливки всех последовательностей ходов
+     * @param fillRate массив площадей: для префикса i и последнего
+     *        цвета c площадь в fillRate[c * prefixesCount + i]
+     */
+    public void rateFills(int[] fillRate) {
+        FloodState[] last = levels[levels.length - 1];
+        if (levels.length == depth) {
+            for (int i = 0; i < last.length; i++) {
+                FloodState state = last[i];
+                int count = state.getFillCount();
+                for (int color = 0; color < colorsCount; color++) {
+                    fillRate[color * last.length + i] = count + state.getFillGain((byte) color);
+                }
+            }
+            expandedNodes += (long) last.length * colorsCount;
+            return;
+        }
+        // Недостающие уровни просчитываются на состояниях нижнего уровня,
+        // префикс i состояния продолжается старшими цифрами номера
+        long nodes = 0, size = 1;
+        for (int k = levels.length - 1; k < depth; k++) {
+            size *= colorsCount;
+            nodes += size;
+        }
+        for (int i = 0; i < last.length; i++) {
+            BotFloodIt.rateFills(last[i], colorsCount, depth, levels.length - 1, i, fillRate);
+        }
+        expandedNodes += last.length * nodes;
+    }
+
+    /**
+     * Сделать ход: корнем становится состояние после заливки color,
+     * его поддерево сохраняется, а нижний уровень дозаливается
+     * @param color идентификатор цвета
+     */
+    public void advance(byte color) {
+        int freeCount = 0;
+        free[freeCount++] = levels[0][0];
+        // Поддерево выбранного цвета поднимается на уровень выше
+        for (int k = 1; k < levels.length; k++) {
+            FloodState[] from = levels[k];
+            FloodState[] to = spare[k - 1];
+            for (int i = 0; i < from.length; i++) {
+                if (i % colorsCount == color) {
+                    to[i / colorsCount] = from[i];
+                } else {
+                    free[freeCount++] = from[i];
+                }
+            }
+        }
+        for (int k = 0; k < levels.length - 1; k++) {
+            FloodState[] swap = levels[k];
+            levels[k] = spare[k];
+            spare[k] = swap;
+        }
+        fillLevel(levels.length - 1, free);
+    }
+
+    /**
+     * Количество залитых и оценённых состояний с момента создания
+     */
+    public long getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /*
+     * Залить уровень k из уровня k-1. Последний ход префикса i
+     * на уровне k - цвет i / colorsCount^(k-1).
+     * Состояния берутся из reuse, а если его нет - создаются
+     */
+    private void fillLevel(int k, FloodState[] reuse) {
+        FloodState[] parents = levels[k - 1];
+        FloodState[] level = levels[k];
+        for (int i = 0; i < level.length; i++) {
+            FloodState parent = parents[i % parents.length];
+            FloodState state;
+            if (reuse != null) {
+                state = reuse[i];
+                state.copyFrom(parent);
+            } else {
+                state = parent.copy();
+            }
+            state.fill((byte) (i / parents.length));
+            level[i] = state;
+        }
+        expandedNodes += level.length;
+    }
+}
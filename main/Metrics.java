@@ -0,0 +1,365 @@
+package main;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Показатели работы всех этапов: захват, распознавание, просчёт и нажатия.
+ * Этапы замеряются там, где выполняются, и складываются в общие гистограммы.
+ * Замер - событие JFR StageEvent и запись в корзину. Без записи JFR
+ * событие стоит двух вызовов System.nanoTime(), а этапы длятся
+ * миллисекунды, поэтому сбор всегда включён.
+ * Заливки всех представлений поля считаются общим счётчиком LongAdder:
+ * одно сложение без выделения памяти, и потоки просчёта не ждут друг друга.
+ * Показатели доступны через JMX под именем main:type=Metrics,
+ * время каждого этапа числами - под именем main:type=Metrics,stage=ЭТАП.
+ * @author aNNiMON
+ */
+public class Metrics implements MetricsMBean {
+
+    /**
+     * Этапы работы
+     */
+    public enum Stage {
+        /* Захват экрана */
+        CAPTURE,
+        /* Поиск поля и кнопок */
+        DETECT,
+        /* Распознавание цветов ячеек */
+        CLASSIFY,
+        /* Просчёт последовательности ходов */
+        SOLVE,
+        /* Нажатие */
+        CLICK,
+        /* Ход от нажатия до подтверждения на экране */
+        MOVE,
+        /* От нажатия до перекраски опрашиваемых ячеек в адаптивном режиме.
+           Добавлен последним, чтобы не сдвинуть номера этапов в записях сессий */
+        CHANGE
+    }
+
+    private static final String OBJECT_NAME = "main:type=Metrics";
+    private static final Metrics INSTANCE = new Metrics();
+
+    /* Гистограммы по этапам, индекс - Stage.ordinal() */
+    private final TimingHistogram[] stages;
+    /* Статистика просчёта */
+    private long searches, expandedNodes, bruteForceNodes, searchNanos, searchFills;
+    private long transpositionHits, transpositionMisses;
+    /* Статистика игр */
+    private long games, solvedGames, moves, maxMoves;
+    /* Статистика темпа нажатий: повторные нажатия и опросы ячеек */
+    private long clickRetries, changePolls;
+    /* Заливки всех состояний поля, в том числе вне просчёта */
+    private final LongAdder fillOperations;
+    private boolean registered;
+
+    private Metrics() {
+        stages = new TimingHistogram[Stage.values().length];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new TimingHistogram();
+        }
+        fillOperations = new LongAdder();
+    }
+
+    /**
+     * Общие показатели
+     */
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Зарегистрировать показатели в JMX, повторные вызовы ничего не делают
+     */
+    public static synchronized void register() {
+        if (INSTANCE.registered) return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+            for (Stage stage : Stage.values()) {
+                server.registerMBean(INSTANCE.getHistogram(stage),
+                        new ObjectName(OBJECT_NAME + ",stage=" + stage));
+            }
+            INSTANCE.registered = true;
+        } catch (JMException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Начать замер этапа
+     * @param stage этап
+     * @return начатое событие JFR, замер заканчивается вызовом record
+     */
+    public static StageEvent start(Stage stage) {
+        StageEvent event = createEvent(stage);
+        event.begin();
+        event.startFills = INSTANCE.fillOperations.sum();
+        event.startNanos = System.nanoTime();
+        return event;
+    }
+
+    /**
+     * Учесть одну заливку состояния поля.
+     * Вызывается из fill() каждого представления поля
+     */
+    public static void countFill() {
+        INSTANCE.fillOperations.increment();
+    }
+
+    /*
+     * Новое событие JFR этапа
+     */
+    private static StageEvent createEvent(Stage stage) {
+        switch (stage) {
+            case CAPTURE:
+                return new StageEvent.Capture();
+            case DETECT:
+                return new StageEvent.Detect();
+            case CLASSIFY:
+                return new StageEvent.Classify();
+            case SOLVE:
+                return new StageEvent.Solve();
+            case CLICK:
+                return new StageEvent.Click();
+            case MOVE:
+                return new StageEvent.Move();
+            default:
+                return new StageEvent.Change();
+        }
+    }
+
+    /**
+     * Закончить замер этапа: записать событие JFR и время в гистограмму
+     * @param event событие, начатое вызовом start
+     */
+    public static void record(StageEvent event) {
+        long nanos = System.nanoTime() - event.startNanos;
+        event.commit();
+        INSTANCE.stages[event.getStage().ordinal()].record(nanos);
+    }
+
+    /**
+     * Закончить замер просчёта и записать его результаты.
+     * Заливки просчёта - прирост общего счётчика от начала замера, поэтому
+     * при одновременном просчёте на нескольких полях в них попадают и чужие заливки
+     * @param event событие, начатое вызовом start(Stage.SOLVE). При игре
+     *        по мере просчёта его время включает ожидание очереди ходов
+     * @param expanded просчитано узлов
+     * @param bruteForce узлов при полном переборе
+     * @param hits попаданий в таблицу просчитанных состояний
+     * @param misses промахов
+     */
+    public static void recordSearch(StageEvent event, long expanded, long bruteForce, long hits, long misses) {
+        long nanos = System.nanoTime() - event.startNanos;
+        long fills = INSTANCE.fillOperations.sum() - event.startFills;
+        if (event instanceof StageEvent.Solve) {
+            StageEvent.Solve solve = (StageEvent.Solve) event;
+            solve.expandedNodes = expanded;
+            solve.bruteForceNodes = bruteForce;
+            solve.transpositionHits = hits;
+            solve.transpositionMisses = misses;
+            solve.fillOperations = fills;
+        }
+        event.commit();
+        INSTANCE.stages[event.getStage().ordinal()].record(nanos, fills);
+        synchronized (INSTANCE) {
+            INSTANCE.searches++;
+            INSTANCE.searchNanos += nanos;
+            INSTANCE.searchFills += fills;
+            INSTANCE.expandedNodes += expanded;
+            INSTANCE.bruteForceNodes += bruteForce;
+            INSTANCE.transpositionHits += hits;
+            INSTANCE.transpositionMisses += misses;
+        }
+    }
+
+    /**
+     * Записать результат игры
+     * @param gameMoves сделано ходов
+     * @param retries сколько раз нажатие повторялось, потому что поле не изменилось
+     * @param polls сколько раз опрашивались ячейки в ожидании перекраски
+     * @param solved true - поле залито
+     */
+    public static void recordGame(long gameMoves, long retries, long polls, boolean solved) {
+        synchronized (INSTANCE) {
+            INSTANCE.games++;
+            if (solved) INSTANCE.solvedGames++;
+            INSTANCE.moves += gameMoves;
+            INSTANCE.maxMoves = Math.max(INSTANCE.maxMoves, gameMoves);
+            INSTANCE.clickRetries += retries;
+            INSTANCE.changePolls += polls;
+        }
+    }
+
+    /**
+     * Гистограмма этапа
+     * @param stage этап
+     * @return гистограмма, общая для всех потоков
+     */
+    public TimingHistogram getHistogram(Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    @Override
+    public String getCaptureLatency() {
+        return getHistogram(Stage.CAPTURE).toString();
+    }
+
+    @Override
+    public String getDetectLatency() {
+        return getHistogram(Stage.DETECT).toString();
+    }
+
+    @Override
+    public String getClassifyLatency() {
+        return getHistogram(Stage.CLASSIFY).toString();
+    }
+
+    @Override
+    public String getSolveLatency() {
+        return getHistogram(Stage.SOLVE).toString();
+    }
+
+    @Override
+    public String getClickLatency() {
+        return getHistogram(Stage.CLICK).toString();
+    }
+
+    @Override
+    public String getMoveLatency() {
+        return getHistogram(Stage.MOVE).toString();
+    }
+
+    @Override
+    public String getChangeLatency() {
+        return getHistogram(Stage.CHANGE).toString();
+    }
+
+    @Override
+    public double getPercentileMillis(String stage, double percentile) {
+        return getHistogram(Stage.valueOf(stage.trim().toUpperCase(Locale.ROOT))).getPercentileMillis(percentile);
+    }
+
+    @Override
+    public synchronized long getSearches() {
+        return searches;
+    }
+
+    @Override
+    public synchronized long getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    @Override
+    public synchronized long getBruteForceNodes() {
+        return bruteForceNodes;
+    }
+
+    @Override
+    public synchronized double getNodesPerSecond() {
+        return (searchNanos == 0) ? 0 : expandedNodes * 1e9 / searchNanos;
+    }
+
+    @Override
+    public long getFillOperations() {
+        return fillOperations.sum();
+    }
+
+    @Override
+    public synchronized double getFillsPerSecond() {
+        return (searchNanos == 0) ? 0 : searchFills * 1e9 / searchNanos;
+    }
+
+    @Override
+    public synchronized long getTranspositionHits() {
+        return transpositionHits;
+    }
+
+    @Override
+    public synchronized long getTranspositionMisses() {
+        return transpositionMisses;
+    }
+
+    @Override
+    public synchronized double getTranspositionHitRate() {
+        long lookups = transpositionHits + transpositionMisses;
+        return (lookups == 0) ? 0 : (double) transpositionHits / lookups;
+    }
+
+    @Override
+    public synchronized long getGames() {
+        return games;
+    }
+
+    @Override
+    public synchronized long getSolvedGames() {
+        return solvedGames;
+    }
+
+    @Override
+    public synchronized long getMoves() {
+        return moves;
+    }
+
+    @Override
+    public synchronized double getMeanMovesPerGame() {
+        return (games == 0) ? 0 : (double) moves / games;
+    }
+
+    @Override
+    public synchronized long getMaxMovesPerGame() {
+        return maxMoves;
+    }
+
+    @Override
+    public synchronized long getClickRetries() {
+        return clickRetries;
+    }
+
+    @Override
+    public synchronized long getChangePolls() {
+        return changePolls;
+    }
+
+    @Override
+    public synchronized double getMeanPollsPerMove() {
+        return (moves == 0) ? 0 : (double) changePolls / moves;
+    }
+
+    @Override
+    public void reset() {
+        for (TimingHistogram histogram : stages) {
+            histogram.reset();
+        }
+        fillOperations.reset();
+        synchronized (this) {
+            searches = expandedNodes = bruteForceNodes = searchNanos = searchFills = 0;
+            transpositionHits = transpositionMisses = 0;
+            games = solvedGames = moves = maxMoves = 0;
+            clickRetries = changePolls = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            sb.append(stage).append(": ").append(getHistogram(stage)).append('\n');
+        }
+        synchronized (this) {
+            sb.append(String.format(Locale.US,
+                    "searches=%d nodes=%d nodes/s=%.0f fills=%d fills/s=%.0f tt hits=%d misses=%d games=%d solved=%d"
+                    + " moves/game=%.1f retries=%d polls/move=%.1f",
+                    searches, expandedNodes, getNodesPerSecond(), getFillOperations(), getFillsPerSecond(),
+                    transpositionHits, transpositionMisses,
+                    games, solvedGames, getMeanMovesPerGame(), clickRetries, getMeanPollsPerMove()));
+        }
+        return sb.toString();
+    }
+}
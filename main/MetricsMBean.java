@@ -0,0 +1,120 @@
+package main;
+
+/**
+ * Показатели работы бота для JMX.
+ * Время этапов - строка со средним, процентилями и корзинами гистограммы.
+ * @author aNNiMON
+ */
+public interface MetricsMBean {
+
+    /**
+     * Время захвата экрана
+     */
+    String getCaptureLatency();
+
+    /**
+     * Время поиска поля и кнопок на снимке
+     */
+    String getDetectLatency();
+
+    /**
+     * Время распознавания цветов ячеек
+     */
+    String getClassifyLatency();
+
+    /**
+     * Время просчёта последовательности ходов
+     */
+    String getSolveLatency();
+
+    /**
+     * Время одного нажатия
+     */
+    String getClickLatency();
+
+    /**
+     * Время хода от нажатия до подтверждения на экране
+     */
+    String getMoveLatency();
+
+    /**
+     * Время от нажатия до перекраски опрашиваемых ячеек в адаптивном режиме
+     */
+    String getChangeLatency();
+
+    /**
+     * Время, которое не превышают percentile процентов замеров этапа
+     * @param stage название этапа: CAPTURE, DETECT, CLASSIFY, SOLVE, CLICK, MOVE, CHANGE
+     * @param percentile процент замеров, от 0 до 100
+     * @return время, мс
+     */
+    double getPercentileMillis(String stage, double percentile);
+
+    long getSearches();
+
+    /**
+     * Количество просчитанных узлов. Узел - одна заливка
+     * или подсчёт прироста заливки последним ходом
+     */
+    long getExpandedNodes();
+
+    /**
+     * Сколько узлов просчитал бы полный перебор
+     */
+    long getBruteForceNodes();
+
+    /**
+     * Просчитанных узлов в секунду за всё время просчёта
+     */
+    double getNodesPerSecond();
+
+    /**
+     * Количество заливок всех состояний поля: просчёт, проверка ходов и игра.
+     * В отличие от узлов, не включает подсчёт прироста без заливки
+     */
+    long getFillOperations();
+
+    /**
+     * Заливок в секунду за всё время просчёта
+     */
+    double getFillsPerSecond();
+
+    long getTranspositionHits();
+
+    long getTranspositionMisses();
+
+    /**
+     * Доля попаданий в таблицу просчитанных состояний, от 0 до 1
+     */
+    double getTranspositionHitRate();
+
+    long getGames();
+
+    long getSolvedGames();
+
+    long getMoves();
+
+    double getMeanMovesPerGame();
+
+    long getMaxMovesPerGame();
+
+    /**
+     * Сколько раз нажатие повторялось, потому что поле не изменилось за отведённое время
+     */
+    long getClickRetries();
+
+    /**
+     * Сколько раз опрашивались ячейки в ожидании перекраски
+     */
+    long getChangePolls();
+
+    /**
+     * Опросов ячеек на один ход
+     */
+    double getMeanPollsPerMove();
+
+    /**
+     * Начать сбор показателей заново
+     */
+    void reset();
+}
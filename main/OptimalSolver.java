@@ -0,0 +1,194 @@
+package main;
+
+/**
+ * Точный поиск кратчайшей последовательности ходов (IDA*) над графом областей.
+ * Нижняя оценка числа оставшихся ходов - максимум из количества
+ * оставшихся цветов и удалённости самой дальней области от залитой
+ * (за ход граница продвигается не более чем на одну область,
+ * а исчезнуть полностью может не более одного цвета).
+ * @author aNNiMON
+ */
+public class OptimalSolver {
+
+    /* Как часто проверять время, в узлах */
+    private static final int TIME_CHECK_MASK = 0x3FF;
+
+    private final RegionGraph graph;
+    /* Состояния, уже просчитанные на текущем пороге: глубина - порог, значение - g */
+    private final TranspositionTable visited;
+    /* Рабочие массивы для оценки */
+    private final int[] distance;
+    private final int[] queue;
+    private final int[] colorMarks;
+    private int colorMark;
+    /* Рабочее состояние, ходы делаются и отменяются на нём */
+    private RegionState state;
+    /* Текущий путь */
+    private byte[] path;
+    /* Порядок ходов на каждом уровне */
+    private byte[][] moves;
+    /* Наименьшая оценка, превысившая порог */
+    private int nextBound;
+    /* Длина найденного решения */
+    private int solutionLength;
+    /* Граница времени в наносекундах */
+    private long deadline;
+    private boolean timedOut;
+    /* Количество просчитанных узлов */
+    private long expandedNodes;
+
+    /**
+     * @param graph граф областей поля
+     * @param visited таблица просчитанных состояний
+     */
+    public OptimalSolver(RegionGraph graph, TranspositionTable visited) {
+        this.graph = graph;
+        this.visited = visited;
+        int regions = graph.getRegionsCount();
+        distance = new int[regions];
+        queue = new int[regions];
+        colorMarks = new int[graph.getColorsCount()];
+        colorMark = 0;
+    }
+
+    /**
+     * Найти кратчайшую последовательность ходов короче известной
+     * @param start начальное состояние, не изменяется
+     * @param upper известная последовательность, задаёт верхнюю границу
+     * @param budget ограничение времени в миллисекундах
+     * @return кратчайшая последовательность, upper - если короче нет
+     *         или null - если время вышло
+     */
+    public byte[] solve(RegionState start, byte[] upper, long budget) {
+        deadline = System.nanoTime() + budget * 1000000L;
+        timedOut = false;
+        expandedNodes = 0;
+        int maxDepth = upper.length;
+        state = (RegionState) start.copy();
+        moves = new byte[maxDepth + 1][graph.getColorsCount()];
+        path = new byte[maxDepth];
+
+        int bound = estimate(state);
+        while (bound < maxDepth) {
+            nextBound = Integer.MAX_VALUE;
+            if (search(0, bound)) {
+                byte[] out = new byte[solutionLength];
+                System.arraycopy(path, 0, out, 0, solutionLength);
+                return out;
+            }
+            if (timedOut) return null;
+            bound = nextBound;
+        }
+        // Короче известной последовательности решения нет
+        return upper;
+    }
+
+    /**
+     * Количество узлов, просчитанных при последнем поиске
+     */
+    public long getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /*
+     * Поиск в глубину с порогом bound на g + h.
+     * Найденное решение остаётся сделанным в рабочем состоянии
+     */
+    private boolean search(int depth, int bound) {
+        if (state.isCompleted()) {
+            solutionLength = depth;
+            return true;
+        }
+        int f = depth + estimate(state);
+        if (f > bound) {
+            if (f < nextBound) nextBound = f;
+            return false;
+        }
+        // То же состояние на этом пороге уже просчитано не с большей глубины
+        long key = state.getHash();
+        int entry = visited.find(key);
+        if ((entry != -1) && (visited.getDepth(entry) == bound) && (visited.getValue(entry) <= depth)) {
+            return false;
+        }
+        visited.store(key, bound, depth);
+        expandedNodes++;
+        if (((expandedNodes & TIME_CHECK_MASK) == 0) && (System.nanoTime() > deadline)) {
+            timedOut = true;
+            return false;
+        }
+        // Сначала пробуем ходы с наибольшим приростом
+        byte[] order = moves[depth];
+        int count = sortMoves(state, order);
+        for (int i = 0; i < count; i++) {
+            byte color = order[i];
+            state.fill(color);
+            path[depth] = color;
+            if (search(depth + 1, bound)) return true;
+            state.undo();
+            if (timedOut) return false;
+        }
+        return false;
+    }
+
+    /*
+     * Записать в order цвета с ненулевым приростом по убыванию прироста
+     */
+    private int sortMoves(RegionState state, byte[] order) {
+        int count = 0;
+        for (int c = 0; c < order.length; c++) {
+            byte color = (byte) c;
+            int gain = state.getFillGain(color);
+            if (gain == 0) continue;
+            int pos = count++;
+            while ((pos > 0) && (state.getFillGain(order[pos - 1]) < gain)) {
+                order[pos] = order[pos - 1];
+                pos--;
+            }
+            order[pos] = color;
+        }
+        return count;
+    }
+
+    /*
+     * Нижняя оценка числа оставшихся ходов
+     */
+    private int estimate(RegionState state) {
+        // Обход в ширину от залитого множества
+        int head = 0, tail = 0;
+        int regions = graph.getRegionsCount();
+        for (int i = 0; i < regions; i++) {
+            if (state.isFlooded(i)) {
+                distance[i] = 0;
+                queue[tail++] = i;
+            } else {
+                distance[i] = -1;
+            }
+        }
+        colorMark++;
+        if (colorMark == 0) {
+            for (int i = 0; i < colorMarks.length; i++) {
+                colorMarks[i] = 0;
+            }
+            colorMark = 1;
+        }
+        int colorsLeft = 0;
+        int eccentricity = 0;
+        while (head < tail) {
+            int region = queue[head++];
+            int end = graph.getAdjacencyEnd(region);
+            for (int k = graph.getAdjacencyStart(region); k < end; k++) {
+                int neighbour = graph.getNeighbour(k);
+                if (distance[neighbour] != -1) continue;
+                distance[neighbour] = distance[region] + 1;
+                eccentricity = distance[neighbour];
+                queue[tail++] = neighbour;
+                byte color = graph.getColor(neighbour);
+                if (colorMarks[color] != colorMark) {
+                    colorMarks[color] = colorMark;
+                    colorsLeft++;
+                }
+            }
+        }
+        return Math.max(colorsLeft, eccentricity);
+    }
+}
@@ -0,0 +1,110 @@
+package main;
+
+/**
+ * Разделение цветов пикселей на группы близких цветов.
+ * Пиксель попадает в первую группу, образец которой отличается
+ * от него не больше чем на tolerance по каждому каналу, иначе
+ * создаётся новая группа. Результат для цвета с уменьшенной
+ * до TABLE_BITS бит точностью каналов запоминается в таблице,
+ * поэтому для повторяющихся цветов сравнение с группами не нужно.
+ * Количество групп не ограничено.
+ * @author aNNiMON
+ */
+public class PaletteClassifier {
+
+    /* Точность каналов в таблице, бит */
+    private static final int TABLE_BITS = 5;
+
+    /* Чувствительность к различию цветов */
+    private final int tolerance;
+    /* Номер группы + 1 для каждого квантованного цвета, 0 - ещё не встречался */
+    private final int[] table;
+    /* Образцы групп - первый попавший в группу цвет */
+    private int[] samples;
+    /* Сумма каналов и количество пикселей в каждой группе */
+    private long[] sums;
+    private int[] counts;
+    private int groupsCount;
+
+    /**
+     * @param tolerance чувствительность к различию цветов по каждому каналу
+     */
+    public PaletteClassifier(int tolerance) {
+        this.tolerance = tolerance;
+        table = new int[1 << (3 * TABLE_BITS)];
+        samples = new int[8];
+        sums = new long[3 * samples.length];
+        counts = new int[samples.length];
+        groupsCount = 0;
+    }
+
+    /**
+     * Определить группу цвета
+     * @param color цвет RGB
+     * @return номер группы
+     */
+    public int classify(int color) {
+        int index = quantize(color);
+        int group = table[index] - 1;
+        if (group < 0) {
+            group = findGroup(color);
+            table[index] = group + 1;
+        }
+        counts[group]++;
+        sums[3 * group] += (color >> 16) & 0xff;
+        sums[3 * group + 1] += (color >> 8) & 0xff;
+        sums[3 * group + 2] += color & 0xff;
+        return group;
+    }
+
+    /**
+     * Количество найденных групп
+     */
+    public int getGroupsCount() {
+        return groupsCount;
+    }
+
+    /**
+     * Получить средний цвет группы
+     * @param group номер группы
+     * @return цвет RGB без альфа-канала, поэтому белый не совпадает с -1
+     */
+    public int getColor(int group) {
+        int count = counts[group];
+        int r = (int) ((sums[3 * group] + count / 2) / count);
+        int g = (int) ((sums[3 * group + 1] + count / 2) / count);
+        int b = (int) ((sums[3 * group + 2] + count / 2) / count);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    /*
+     * Поиск группы, подходящей цвету, или создание новой
+     */
+    private int findGroup(int color) {
+        for (int i = 0; i < groupsCount; i++) {
+            if (ImageUtils.isEquals(color, samples[i], tolerance)) return i;
+        }
+        if (groupsCount == samples.length) {
+            int capacity = samples.length * 2;
+            int[] newSamples = new int[capacity];
+            System.arraycopy(samples, 0, newSamples, 0, groupsCount);
+            samples = newSamples;
+            long[] newSums = new long[3 * capacity];
+            System.arraycopy(sums, 0, newSums, 0, 3 * groupsCount);
+            sums = newSums;
+            int[] newCounts = new int[capacity];
+            System.arraycopy(counts, 0, newCounts, 0, groupsCount);
+            counts = newCounts;
+        }
+        samples[groupsCount] = color;
+        return groupsCount++;
+    }
+
+    private static int quantize(int color) {
+        int shift = 8 - TABLE_BITS;
+        int mask = (1 << TABLE_BITS) - 1;
+        return ((((color >> (16 + shift)) & mask) << TABLE_BITS
+                | ((color >> (8 + shift)) & mask)) << TABLE_BITS)
+                | ((color >> shift) & mask);
+    }
+}
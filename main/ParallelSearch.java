@@ -0,0 +1,121 @@
+package main;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Параллельный полный перебор ходов.
+ * Первые ходы делятся на задачи ForkJoinPool, каждый поток
+ * делает и отменяет ходы на собственной копии поля. Площади записываются
+ * в общий массив по номеру последовательности, поэтому результат
+ * совпадает с последовательным перебором.
+ * Пулы потоков общие для всех просчётов с одинаковым количеством потоков:
+ * они создаются при первом просчёте и не останавливаются, потоки в них фоновые.
+ * @author aNNiMON
+ */
+public class ParallelSearch {
+
+    /* Сколько первых ходов распределяется по задачам, если глубина позволяет */
+    private static final int SPLIT_STEPS = 2;
+    /* Сколько вариантов первых ходов просчитывать в одной задаче без деления */
+    private static final int TASK_PREFIXES = 6;
+
+    /* Общие пулы по количеству потоков */
+    private static final Map<Integer, ForkJoinPool> POOLS = new HashMap<Integer, ForkJoinPool>();
+
+    /* Количество цветов, глубина просчёта и сколько первых ходов распределяется по задачам */
+    private final int colorsCount, depth, splitSteps;
+    private final ForkJoinPool pool;
+    /* Черновые копии поля для каждого потока */
+    private final ThreadLocal<FloodState> scratch;
+
+    /**
+     * @param state состояние, по образцу которого создаются копии для потоков
+     * @param colorsCount количество цветов в игре
+     * @param depth на сколько шагов вперёд просчитывать ход, не меньше двух
+     * @param parallelism количество потоков
+     */
+    public ParallelSearch(final FloodState state, int colorsCount, int depth, int parallelism) {
+        this.colorsCount = colorsCount;
+        this.depth = depth;
+        splitSteps = Math.min(SPLIT_STEPS, depth - 1);
+        pool = getPool(parallelism);
+        final FloodState prototype = state.copy();
+        scratch = new ThreadLocal<FloodState>() {
+            @Override
+            protected FloodState initialValue() {
+                return prototype.copy();
+            }
+        };
+    }
+
+    /**
+     * Просчитать площади заливки всех последовательностей ходов
+     * @param table текущее поле, не изменяется
+     * @param fillRate массив площадей, см. BotFloodIt.rateFills
+     */
+    public void rateFills(FloodState table, int[] fillRate) {
+        int splits = (int) Math.pow(colorsCount, splitSteps);
+        pool.invoke(new RateTask(table, fillRate, 0, splits));
+    }
+
+    /*
+     * Общий пул с заданным количеством потоков, при количестве
+     * как у ForkJoinPool.commonPool - он сам
+     */
+    private static synchronized ForkJoinPool getPool(int parallelism) {
+        if (parallelism == ForkJoinPool.getCommonPoolParallelism()) {
+            return ForkJoinPool.commonPool();
+        }
+        ForkJoinPool pool = POOLS.get(parallelism);
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+            POOLS.put(parallelism, pool);
+        }
+        return pool;
+    }
+
+    /*
+     * Просчёт продолжений первых ходов с номерами [from, to)
+     */
+    private class RateTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FloodState table;
+        private final int[] fillRate;
+        private final int from, to;
+
+        RateTask(FloodState table, int[] fillRate, int from, int to) {
+            this.table = table;
+            this.fillRate = fillRate;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_PREFIXES) {
+                FloodState board = scratch.get();
+                board.copyFrom(table);
+                for (int i = from; i < to; i++) {
+                    int prefix = i;
+                    for (int j = 0; j < splitSteps; j++) {
+                        board.fill((byte) (prefix % colorsCount));
+                        prefix /= colorsCount;
+                    }
+                    BotFloodIt.rateFills(board, colorsCount, depth, splitSteps, i, fillRate);
+                    for (int j = 0; j < splitSteps; j++) {
+                        board.undo();
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RateTask(table, fillRate, from, middle),
+                      new RateTask(table, fillRate, middle, to));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package main;
+
+/**
+ * Просчёт ходов с отсечениями.
+ * Одинаковые состояния, полученные разным порядком ходов или ходом
+ * без прироста, просчитываются один раз. Выбор хода совпадает с полным
+ * перебором BotFloodIt.rateFills: из последовательностей с наибольшей
+ * площадью берётся последовательность с наименьшим номером
+ * i = c0 + c1 * colorsCount + c2 * colorsCount^2 + ...
+ * Старшие цифры номера - последние ходы, поэтому лучшее продолжение
+ * состояния не зависит от ходов, которыми оно получено.
+ * Ход без прироста не меняет залитую область, поэтому из таких ходов
+ * просчитывается только ход наименьшим цветом, и без заливки.
+ * @author aNNiMON
+ */
+public class PrunedSearch {
+
+    /* Количество цветов */
+    private final int colorsCount;
+    /* Глубина просчёта */
+    private final int depth;
+    /* Рабочее состояние, ходы делаются и отменяются на нём */
+    private final FloodState state;
+    /* Уже просчитанные состояния: хеш и оставшаяся глубина -> результат.
+       Результат - площадь в старших 32 битах и номер продолжения в младших.
+       Он не зависит от корня, поэтому таблица переживает ходы */
+    private final TranspositionTable visited;
+    /* Количество просчитанных узлов */
+    private long expandedNodes;
+    /* Количество узлов при полном переборе */
+    private long bruteForceNodes;
+
+    /**
+     * @param state состояние, по образцу которого создаются рабочие копии
+     * @param colorsCount количество цветов в игре
+     * @param depth на сколько шагов вперёд просчитывать ход
+     * @param visited таблица просчитанных состояний
+     */
+    public PrunedSearch(FloodState state, int colorsCount, int depth, TranspositionTable visited) {
+        this.colorsCount = colorsCount;
+        this.depth = depth;
+        this.state = state.copy();
+        this.visited = visited;
+        expandedNodes = 0;
+        bruteForceNodes = 0;
+    }
+
+    /**
+     * Получить цвет следующего хода
+     * @param current текущее состояние, не изменяется
+     * @return идентификатор цвета с наибольшей площадью дальнейшей заливки
+     */
+    public byte getNextFillColor(FloodState current) {
+        long nodes = 1;
+        for (int i = 0; i < depth; i++) {
+            nodes *= colorsCount;
+            bruteForceNodes += nodes;
+        }
+        state.copyFrom(current);
+        int index = getIndex(rateMoves(0));
+        return (byte) (index % colorsCount);
+    }
+
+    /**
+     * Количество узлов, просчитанных с момента создания
+     */
+    public long getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /**
+     * Количество узлов, которое просчитал бы полный перебор
+     */
+    public long getBruteForceNodes() {
+        return bruteForceNodes;
+    }
+
+    /*
+     * Сделать ход color после level ходов и просчитать лучшее продолжение.
+     * Рабочее состояние после просчёта возвращается к прежнему
+     */
+    private long expand(int level, int color) {
+        expandedNodes++;
+        int next = level + 1;
+        // Последний ход не выполняем, площадь известна по приросту
+        if (next == depth) {
+            return pack(state.getFillCount() + state.getFillGain((byte) color), color);
+        }
+        state.fill((byte) color);
+        long best = rateMoves(next);
+        state.undo();
+        return pack(getArea(best), color + colorsCount * getIndex(best));
+    }
+
+    /*
+     * Ход color без прироста после level ходов. Залитая область не меняется,
+     * а прирост своего и нового цвета нулевой в обоих случаях, поэтому
+     * продолжения те же, что у рабочего состояния на ход короче
+     */
+    private long expandEmpty(int level, int color) {
+        expandedNodes++;
+        int next = level + 1;
+        if (next == depth) {
+            return pack(state.getFillCount(), color);
+        }
+        long best = rateMoves(next);
+        return pack(getArea(best), color + colorsCount * getIndex(best));
+    }
+
+    /*
+     * Лучшее продолжение из рабочего состояния после level ходов:
+     * наибольшая площадь и наименьший номер оставшихся ходов
+     */
+    private long rateMoves(int level) {
+        // Все оставшиеся ходы пустые, наименьший номер - из нулевых цветов
+        if (state.isCompleted()) return pack(state.getFillCount(), 0);
+
+        int remaining = depth - level;
+        long key = state.getHash() ^ (remaining * 0xFF51AFD7ED558CCDL);
+        int entry = visited.find(key);
+        if ((entry != -1) && (visited.getDepth(entry) == remaining)) {
+            return visited.getValue(entry);
+        }
+
+        // При равной площади лучше меньший номер, как в полном переборе.
+        // Цвета перебираются по порядку, поэтому из ходов без прироста,
+        // равных по площади, первый имеет наименьший номер
+        long best = -1;
+        boolean emptyRated = false;
+        for (int c = 0; c < colorsCount; c++) {
+            long result;
+            if (state.getFillGain((byte) c) != 0) {
+                result = expand(level, c);
+            } else if (!emptyRated) {
+                emptyRated = true;
+                result = expandEmpty(level, c);
+            } else {
+                continue;
+            }
+            if ((best == -1) || (getArea(result) > getArea(best))) best = result;
+            else if ((getArea(result) == getArea(best)) && (getIndex(result) < getIndex(best))) best = result;
+        }
+        visited.store(key, remaining, best);
+        return best;
+    }
+
+    private static long pack(int area, int index) {
+        return ((long) area << 32) | index;
+    }
+
+    private static int getArea(long result) {
+        return (int) (result >>> 32);
+    }
+
+    private static int getIndex(long result) {
+        return (int) result;
+    }
+}
@@ -0,0 +1,213 @@
+package main;
+
+import java.util.Random;
+
+/**
+ * Граф связных одноцветных областей игрового поля.
+ * Строится один раз, после чего заливка выполняется над областями,
+ * а не над отдельными клетками.
+ * @author aNNiMON
+ */
+public class RegionGraph {
+
+    /* Количество областей */
+    private final int regionsCount;
+    /* Общее количество клеток поля */
+    private final int cellsCount;
+    /* Номер области для каждой клетки, построчно */
+    private final int[] regionOf;
+    /* Цвет каждой области */
+    private final byte[] colors;
+    /* Количество различных идентификаторов цветов */
+    private final int colorsCount;
+    /* Количество клеток в каждой области */
+    private final int[] sizes;
+    /* Списки смежности: соседи области i лежат в adjacency[adjStart[i]..adjStart[i+1]) */
+    private final int[] adjStart;
+    private final int[] adjacency;
+    /* Случайные ключи областей для хеширования состояний */
+    private final long[] keys;
+
+    /**
+     * Построить граф областей
+     * @param board игровое поле
+     */
+    public RegionGraph(FloodBoard board) {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        cellsCount = width * height;
+        regionOf = new int[cellsCount];
+        for (int i = 0; i < cellsCount; i++) {
+            regionOf[i] = -1;
+        }
+        // Разметка областей обходом в ширину, область 0 содержит левую верхнюю клетку
+        int[] queue = new int[cellsCount];
+        int[] regionSizes = new int[cellsCount];
+        byte[] regionColors = new byte[cellsCount];
+        int count = 0;
+        for (int start = 0; start < cellsCount; start++) {
+            if (regionOf[start] != -1) continue;
+            byte color = board.getCell(start % width, start / width);
+            int head = 0, tail = 0;
+            queue[tail++] = start;
+            regionOf[start] = count;
+            while (head < tail) {
+                int pos = queue[head++];
+                int x = pos % width;
+                int y = pos / width;
+                if ((x > 0) && tryMark(board, pos - 1, color, count)) queue[tail++] = pos - 1;
+                if ((x < width - 1) && tryMark(board, pos + 1, color, count)) queue[tail++] = pos + 1;
+                if ((y > 0) && tryMark(board, pos - width, color, count)) queue[tail++] = pos - width;
+                if ((y < height - 1) && tryMark(board, pos + width, color, count)) queue[tail++] = pos + width;
+            }
+            regionSizes[count] = tail;
+            regionColors[count] = color;
+            count++;
+        }
+        regionsCount = count;
+        sizes = new int[count];
+        colors = new byte[count];
+        System.arraycopy(regionSizes, 0, sizes, 0, count);
+        System.arraycopy(regionColors, 0, colors, 0, count);
+        int maxColor = 0;
+        for (int i = 0; i < count; i++) {
+            maxColor = Math.max(maxColor, colors[i]);
+        }
+        colorsCount = maxColor + 1;
+
+        // Клетки, сгруппированные по областям
+        int[] cellStart = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            cellStart[i + 1] = cellStart[i] + sizes[i];
+        }
+        int[] fillPos = new int[count];
+        System.arraycopy(cellStart, 0, fillPos, 0, count);
+        int[] cellsByRegion = new int[cellsCount];
+        for (int i = 0; i < cellsCount; i++) {
+            cellsByRegion[fillPos[regionOf[i]]++] = i;
+        }
+
+        // Соседи каждой области без повторов
+        int[] seen = new int[count];
+        for (int i = 0; i < count; i++) {
+            seen[i] = -1;
+        }
+        int[] neighbours = new int[4 * cellsCount];
+        adjStart = new int[count + 1];
+        int edges = 0;
+        for (int r = 0; r < count; r++) {
+            adjStart[r] = edges;
+            seen[r] = r;
+            for (int k = cellStart[r]; k < cellStart[r + 1]; k++) {
+                int pos = cellsByRegion[k];
+                int x = pos % width;
+                int y = pos / width;
+                if (x > 0) edges = addNeighbour(neighbours, edges, seen, r, regionOf[pos - 1]);
+                if (x < width - 1) edges = addNeighbour(neighbours, edges, seen, r, regionOf[pos + 1]);
+                if (y > 0) edges = addNeighbour(neighbours, edges, seen, r, regionOf[pos - width]);
+                if (y < height - 1) edges = addNeighbour(neighbours, edges, seen, r, regionOf[pos + width]);
+            }
+        }
+        adjStart[count] = edges;
+        adjacency = new int[edges];
+        System.arraycopy(neighbours, 0, adjacency, 0, edges);
+
+        // Фиксированное зерно, чтобы хеши не зависели от запуска
+        Random rnd = new Random(count);
+        keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = rnd.nextLong();
+        }
+    }
+
+    public int getRegionsCount() {
+        return regionsCount;
+    }
+
+    public int getCellsCount() {
+        return cellsCount;
+    }
+
+    public int getColorsCount() {
+        return colorsCount;
+    }
+
+    /**
+     * Получить номер области, содержащей клетку
+     * @param pos индекс клетки, построчно
+     * @return номер области
+     */
+    public int getRegion(int pos) {
+        return regionOf[pos];
+    }
+
+    public byte getColor(int region) {
+        return colors[region];
+    }
+
+    public int getSize(int region) {
+        return sizes[region];
+    }
+
+    /**
+     * Получить ключ области для хеширования
+     * @param region номер области
+     * @return случайное 64-битное число
+     */
+    public long getKey(int region) {
+        return keys[region];
+    }
+
+    /**
+     * Индекс первого соседа области в массиве смежности
+     * @param region номер области
+     */
+    public int getAdjacencyStart(int region) {
+        return adjStart[region];
+    }
+
+    /**
+     * Индекс за последним соседом области в массиве смежности
+     * @param region номер области
+     */
+    public int getAdjacencyEnd(int region) {
+        return adjStart[region + 1];
+    }
+
+    /**
+     * Получить соседа по индексу в массиве смежности
+     * @param index индекс от getAdjacencyStart до getAdjacencyEnd
+     * @return номер соседней области
+     */
+    public int getNeighbour(int index) {
+        return adjacency[index];
+    }
+
+    /**
+     * Создать начальное состояние заливки: залита только область 0
+     * @return состояние для просчёта ходов
+     */
+    public RegionState createState() {
+        return new RegionState(this);
+    }
+
+    /*
+     * Отметить клетку как принадлежащую области, если совпадает цвет
+     */
+    private boolean tryMark(FloodBoard board, int pos, byte color, int region) {
+        if (regionOf[pos] != -1) return false;
+        if (board.getCell(pos % board.getWidth(), pos / board.getWidth()) != color) return false;
+        regionOf[pos] = region;
+        return true;
+    }
+
+    /*
+     * Добавить соседа, если он ещё не был добавлен
+     */
+    private int addNeighbour(int[] neighbours, int edges, int[] seen, int region, int neighbour) {
+        if (seen[neighbour] == region) return edges;
+        seen[neighbour] = region;
+        neighbours[edges] = neighbour;
+        return edges + 1;
+    }
+}
@@ -0,0 +1,246 @@
+package main;
+
+/**
+ * Состояние заливки над графом областей.
+ * Хранит залитое множество, число залитых клеток и границу,
+ * разбитую по цветам, и обновляет их при каждом ходе.
+ * @author aNNiMON
+ */
+public class RegionState implements FloodState {
+
+    /* Состояния областей */
+    private static final byte FREE = 0, FRONTIER = 1, FLOODED = 2;
+
+    /* Граф областей, общий для всех копий */
+    private final RegionGraph graph;
+    /* Состояние каждой области */
+    private final byte[] status;
+    /* Области границы для каждого цвета */
+    private final int[][] frontier;
+    private final int[] frontierCount;
+    /* Сколько клеток добавит заливка каждым цветом */
+    private final int[] gain;
+    /* Количество незалитых областей каждого цвета */
+    private final int[] remaining;
+    /* Количество цветов, оставшихся вне залитой области */
+    private int colorsLeft;
+    /* Текущий цвет залитой области */
+    private byte color;
+    /* Количество залитых клеток */
+    private int fillCount;
+    /* Хеш залитого множества */
+    private long hash;
+    /* Журнал отмены: залитые области, новые области границы и заголовок каждого хода */
+    private int[] journal;
+    private int journalSize;
+
+    public RegionState(RegionGraph graph) {
+        this.graph = graph;
+        int regions = graph.getRegionsCount();
+        int colorsCount = graph.getColorsCount();
+        status = new byte[regions];
+        frontier = new int[colorsCount][regions];
+        frontierCount = new int[colorsCount];
+        gain = new int[colorsCount];
+        remaining = new int[colorsCount];
+        colorsLeft = 0;
+        for (int i = 0; i < regions; i++) {
+            if (remaining[graph.getColor(i)]++ == 0) colorsLeft++;
+        }
+        color = graph.getColor(0);
+        fillCount = 0;
+        hash = 0;
+        journal = new int[64];
+        journalSize = 0;
+        flood(0);
+        journalSize = 0;
+    }
+
+    private RegionState(RegionState state) {
+        this.graph = state.graph;
+        status = new byte[state.status.length];
+        frontier = new int[state.frontier.length][state.status.length];
+        frontierCount = new int[state.frontierCount.length];
+        gain = new int[state.gain.length];
+        remaining = new int[state.remaining.length];
+        // Копия обычно делает один ход от исходного состояния: залитые и новые
+        // области границы не пересекаются, поэтому журнал одного хода
+        // не длиннее числа областей и заголовка и не растёт
+        journal = new int[Math.max(64, status.length + 4)];
+        copyFrom(state);
+    }
+
+    @Override
+    public byte getColor() {
+        return color;
+    }
+
+    @Override
+    public void fill(byte color) {
+        Metrics.countFill();
+        if ((this.color == color) || (color >= gain.length)) {
+            // Пустой ход. Цвета, которого нет на поле, меняет только цвет
+            // залитой области, как и в других представлениях.
+            // Ход записываем, чтобы отмена была симметричной
+            push(this.color);
+            push(-1);
+            this.color = color;
+            return;
+        }
+        byte oldColor = this.color;
+        int oldGain = gain[color];
+        this.color = color;
+        int count = frontierCount[color];
+        frontierCount[color] = 0;
+        gain[color] = 0;
+        // Области одного цвета не граничат друг с другом, поэтому
+        // новые соседи никогда не попадут в обрабатываемый список.
+        // Следующие ходы могут его перезаписать, поэтому для отмены
+        // залитые области сохраняются в журнале
+        int[] regions = frontier[color];
+        for (int i = 0; i < count; i++) {
+            push(regions[i]);
+        }
+        int start = journalSize;
+        for (int i = 0; i < count; i++) {
+            flood(regions[i]);
+        }
+        push(journalSize - start);
+        push(oldGain);
+        push(oldColor);
+        push(count);
+    }
+
+    @Override
+    public void undo() {
+        int count = journal[--journalSize];
+        if (count == -1) {
+            color = (byte) journal[--journalSize];
+            return;
+        }
+        byte oldColor = (byte) journal[--journalSize];
+        int oldGain = journal[--journalSize];
+        int added = journal[--journalSize];
+        // Убираем добавленные области границы в обратном порядке
+        for (int i = 0; i < added; i++) {
+            int region = journal[--journalSize];
+            byte regionColor = graph.getColor(region);
+            status[region] = FREE;
+            frontierCount[regionColor]--;
+            gain[regionColor] -= graph.getSize(region);
+        }
+        // Возвращаем залитые области в границу
+        int[] regions = frontier[color];
+        for (int i = count - 1; i >= 0; i--) {
+            int region = journal[--journalSize];
+            regions[i] = region;
+            status[region] = FRONTIER;
+            fillCount -= graph.getSize(region);
+            hash ^= graph.getKey(region);
+            if (remaining[color]++ == 0) colorsLeft++;
+        }
+        frontierCount[color] = count;
+        gain[color] = oldGain;
+        color = oldColor;
+    }
+
+    @Override
+    public int getFillCount() {
+        return fillCount;
+    }
+
+    @Override
+    public int getFillGain(byte color) {
+        if ((this.color == color) || (color >= gain.length)) return 0;
+        return gain[color];
+    }
+
+    @Override
+    public int getColorsLeft() {
+        return colorsLeft;
+    }
+
+    @Override
+    public boolean isCompleted() {
+        return fillCount == graph.getCellsCount();
+    }
+
+    public RegionGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Проверить, залита ли область
+     * @param region номер области
+     * @return true - область входит в залитое множество
+     */
+    public boolean isFlooded(int region) {
+        return status[region] == FLOODED;
+    }
+
+    @Override
+    public long getHash() {
+        return hash ^ (color * 0x9E3779B97F4A7C15L);
+    }
+
+    @Override
+    public FloodState copy() {
+        return new RegionState(this);
+    }
+
+    @Override
+    public long getCopyBytes() {
+        // Больше всего места занимают граница по цветам и журнал одного хода
+        return status.length + 4L * frontier.length * status.length
+                + 4L * Math.max(64, status.length + 4) + 12L * gain.length;
+    }
+
+    @Override
+    public void copyFrom(FloodState state) {
+        RegionState other = (RegionState) state;
+        System.arraycopy(other.status, 0, status, 0, status.length);
+        for (int i = 0; i < frontier.length; i++) {
+            System.arraycopy(other.frontier[i], 0, frontier[i], 0, other.frontierCount[i]);
+        }
+        System.arraycopy(other.frontierCount, 0, frontierCount, 0, frontierCount.length);
+        System.arraycopy(other.gain, 0, gain, 0, gain.length);
+        System.arraycopy(other.remaining, 0, remaining, 0, remaining.length);
+        colorsLeft = other.colorsLeft;
+        color = other.color;
+        fillCount = other.fillCount;
+        hash = other.hash;
+        journalSize = 0;
+    }
+
+    /*
+     * Присоединить область к залитому множеству и расширить границу
+     */
+    private void flood(int region) {
+        status[region] = FLOODED;
+        fillCount += graph.getSize(region);
+        hash ^= graph.getKey(region);
+        if (--remaining[graph.getColor(region)] == 0) colorsLeft--;
+        int end = graph.getAdjacencyEnd(region);
+        for (int k = graph.getAdjacencyStart(region); k < end; k++) {
+            int neighbour = graph.getNeighbour(k);
+            if (status[neighbour] != FREE) continue;
+            status[neighbour] = FRONTIER;
+            push(neighbour);
+            byte neighbourColor = graph.getColor(neighbour);
+            frontier[neighbourColor][frontierCount[neighbourColor]++] = neighbour;
+            gain[neighbourColor] += graph.getSize(neighbour);
+        }
+    }
+
+    /*
+     * Добавить значение в журнал отмены
+     */
+    private void push(int value) {
+        if (journalSize == journal.length) {
+            int[] newJournal = new int[journal.length * 2];
+            System.arraycopy(journal, 0, newJournal, 0, journalSize);
+            journal = newJournal;
+        }
+        journal[journalSize++] = value;
+    }
+}
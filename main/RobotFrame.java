@@ -3,21 +3,51 @@ package main;
 import java.awt.AWTException;
 import java.awt.Point;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import javax.swing.*;
 
 /**
- * Окно приложения
+ * Окно приложения.
+ * Запуск: java main.RobotFrame [-record FILE], с -record каждая игра
+ * с автоматическими ходами записывается для повтора в SessionReplay
  * @author aNNiMON
  */
 public class RobotFrame extends JFrame {
 
-    /* Статус работы приложения */
-    private boolean isRunning;
+    /* Время на поиск последовательности ходов, мс */
+    private static final long SOLVE_TIME = 1000;
+    /* С какого размера поля ходить, не дожидаясь конца просчёта.
+       На малых полях лучше дать время поиску с ограничением времени */
+    private static final int PIPELINE_MIN_SIZE = 20;
+
+    /* Статус работы приложения. Меняется в потоке событий Swing,
+       поток игры его только читает */
+    private volatile boolean isRunning;
     
     private Thread robotAction;
     
+    /* Захват экрана с запомненным положением поля и кнопок.
+       Используется только в потоке событий Swing, поток игры получает сессию при запуске */
+    private CaptureSession captureSession;
+    
+    /* Текущая игра с проверкой ходов, null - не идёт */
+    private volatile LivePlayer livePlayer;
+    
+    /* Запись сыгранных игр, null - не записывать */
+    private final SessionRecorder recorder;
+    
     /** Creates new form RobotFrame */
     public RobotFrame() {
+        this(null);
+    }
+    
+    /**
+     * Окно, записывающее сыгранные игры
+     * @param recorder запись сессии, null - не записывать
+     */
+    public RobotFrame(SessionRecorder recorder) {
+        this.recorder = recorder;
         initComponents();
         isRunning = false;
         setAlwaysOnTop(true);
@@ -191,56 +221,105 @@ public class RobotFrame extends JFrame {
         if (isRunning) {
             startStop.setText("Start");
             isRunning = false;
+            LivePlayer player = livePlayer;
+            if (player != null) player.stop();
         } else {
+            // Настройки читаем здесь, в потоке событий Swing, поток игры получает готовую сессию
+            final CaptureSession session;
+            try {
+                session = getCaptureSession();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                return;
+            }
             startStop.setText("Stop");
             isRunning = true;
             robotAction = new Thread(new Runnable() {
 
                 @Override
                 public void run() {
-                    int windowX, windowY, boardSize, cellSize;
-                    BufferedImage detectImage;
-                    RobotUtils robot;
-                    // Получаем настройки
-                    try {
-                        robot = new RobotUtils();
-                        detectImage = robot.getImage(-1, -1, -1, -1);
-                        windowX = Integer.valueOf(windowXTextField.getText());
-                        windowY = Integer.valueOf(windowYTextField.getText());
-                        boardSize = (Integer) boardSizeSpinner.getValue();
-                        cellSize = (Integer) cellSizeSpinner.getValue();
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                        return;
-                    }
-                    ImageUtils iu = new ImageUtils(detectImage, boardSize, cellSize, windowX, windowY);
-                    // Обрезаем картинку до вида игрового поля
-                    detectImage = iu.getBoardImage();
-                    // Получаем цвета из картинки
-                    int[][] table = new int[boardSize][boardSize];
-                    int offset = cellSize / 2;
-                    for (int i = 0; i < boardSize; i++) {
-                        for (int j = 0; j < boardSize; j++) {
-                            table[i][j] = detectImage.getRGB(j*cellSize + offset,
-                                                             i*cellSize + offset);
+                    // Время этапов для записи игры, индекс - Metrics.Stage.ordinal()
+                    long[] timings = new long[Metrics.Stage.values().length];
+                    long start = System.nanoTime();
+                    ImageUtils iu = session.capture();
+                    long captured = System.nanoTime();
+                    timings[Metrics.Stage.CAPTURE.ordinal()] = captured - start;
+                    SwingUtilities.invokeLater(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            updateSettings(session);
                         }
-                    }
+                    });
+                    // Получаем цвета из картинки
+                    int[][] table = iu.getBoardColors();
+                    timings[Metrics.Stage.CLASSIFY.ordinal()] = System.nanoTime() - captured;
                     BotFloodIt bfi = new BotFloodIt(table);
-                    // Получаем результирующую последовательность цветов 
-                    byte[] result = bfi.getFillSequence();
                     int[] colors = bfi.getColors();
                     // Пытаемся получить координаты кнопок для автоматической игры
-                    Point[] buttons = iu.getButtons(colors);
+                    Point[] buttons;
+                    start = System.nanoTime();
+                    try {
+                        buttons = session.getButtons(colors);
+                    } catch (IllegalArgumentException ex) {
+                        // Цветов больше, чем можно искать кнопок - покажем последовательность
+                        buttons = null;
+                    }
+                    timings[Metrics.Stage.DETECT.ordinal()] = System.nanoTime() - start;
                     if (buttons == null) {
+                        // Получаем результирующую последовательность цветов 
+                        byte[] result = bfi.getFillSequence(System.currentTimeMillis() + SOLVE_TIME, null);
                         // Если не удалось найти кнопки, то просто выводим последовательность в виде картинки
-                        BufferedImage out = iu.sequenceToImage(result, colors);
-                        showImageWindow("Result: "+result.length+" steps", out);
+                        final BufferedImage out = iu.sequenceToImage(result, colors);
+                        final String title = "Result: " + result.length + " steps";
+                        SwingUtilities.invokeLater(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                showImageWindow(title, out);
+                            }
+                        });
                     } else {
-                        // Запускаем автоигру
-                        robot.autoClick(buttons, result);
+                        // Запускаем автоигру, каждый ход сверяется с экраном
+                        LivePlayer player = new LivePlayer(session, buttons, colors);
+                        livePlayer = player;
+                        if (!isRunning) player.stop();
+                        boolean solved;
+                        String solver;
+                        int solveTime;
+                        if (table.length >= PIPELINE_MIN_SIZE) {
+                            // На большом поле начинаем ходить, пока решатель ещё считает
+                            solver = BotFloodIt.Search.GREEDY.name();
+                            solveTime = 0;
+                            start = System.nanoTime();
+                            solved = player.play(table, bfi);
+                        } else {
+                            solver = SessionReplay.ANYTIME;
+                            solveTime = (int) SOLVE_TIME;
+                            start = System.nanoTime();
+                            byte[] sequence = bfi.getFillSequence(System.currentTimeMillis() + SOLVE_TIME, null);
+                            timings[Metrics.Stage.SOLVE.ordinal()] = System.nanoTime() - start;
+                            start = System.nanoTime();
+                            solved = player.play(table, sequence);
+                        }
+                        timings[Metrics.Stage.MOVE.ordinal()] = System.nanoTime() - start;
+                        livePlayer = null;
+                        if (recorder != null) {
+                            recorder.write(new GameRecord(iu, session.getBoard(), colors, table,
+                                    solver, solveTime, player.getInitialMoves(), player, solved, timings));
+                        }
                     }
-                    isRunning = false;
-                    startStop.setText("Start");
+                    final Thread self = Thread.currentThread();
+                    SwingUtilities.invokeLater(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            // Игру могли остановить и запустить заново, пока эта заканчивалась
+                            if (robotAction != self) return;
+                            isRunning = false;
+                            startStop.setText("Start");
+                        }
+                    });
                 }
 
             });
@@ -250,21 +329,15 @@ public class RobotFrame extends JFrame {
 
     private void checkButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_checkButtonActionPerformed
         if (isRunning) return; // нельзя проверять настройки во время работы
-        int windowX, windowY, boardSize, cellSize;
-        BufferedImage detectImage;
-        RobotUtils robot;
+        CaptureSession session;
         try {
-            robot = new RobotUtils();
-            detectImage = robot.getImage(-1, -1, -1, -1);
-            windowX = Integer.valueOf(windowXTextField.getText());
-            windowY = Integer.valueOf(windowYTextField.getText());
-            boardSize = (Integer) boardSizeSpinner.getValue();
-            cellSize = (Integer) cellSizeSpinner.getValue();
+            session = getCaptureSession();
         } catch (Exception ex) {
             ex.printStackTrace();
             return;
         }
-        ImageUtils iu = new ImageUtils(detectImage, boardSize, cellSize, windowX, windowY);
+        ImageUtils iu = session.capture();
+        updateSettings(session);
         showImageWindow("Checking", iu.getBoardImage());
     }//GEN-LAST:event_checkButtonActionPerformed
 
@@ -286,6 +359,35 @@ public class RobotFrame extends JFrame {
         }
     }//GEN-LAST:event_detectButtonActionPerformed
 
+    /**
+     * Получить сессию захвата для текущих настроек.
+     * Сессия сохраняется, пока настройки не изменятся.
+     * Читает поля окна, поэтому вызывается только в потоке событий Swing
+     * @return сессия захвата
+     * @throws AWTException ошибка инициализации Robot
+     */
+    private CaptureSession getCaptureSession() throws AWTException {
+        int windowX = Integer.valueOf(windowXTextField.getText());
+        int windowY = Integer.valueOf(windowYTextField.getText());
+        int boardSize = (Integer) boardSizeSpinner.getValue();
+        int cellSize = (Integer) cellSizeSpinner.getValue();
+        if ((captureSession == null) || !captureSession.matches(boardSize, cellSize, windowX, windowY)) {
+            captureSession = new CaptureSession(new RobotUtils(), boardSize, cellSize, windowX, windowY);
+        }
+        return captureSession;
+    }
+    
+    /**
+     * Показать в настройках положение поля, если сессия его уточнила
+     * @param session сессия захвата
+     */
+    private void updateSettings(CaptureSession session) {
+        Point board = session.getBoard();
+        windowXTextField.setText(String.valueOf(board.x));
+        windowYTextField.setText(String.valueOf(board.y));
+        cellSizeSpinner.setValue(session.getCellSize());
+    }
+    
     /**
      * Показать модальное окно с изображением
      * @param title заголовок окна
@@ -311,6 +413,13 @@ public class RobotFrame extends JFrame {
      * @param args the command line arguments
      */
     public static void main(String args[]) {
+        File recordFile = null;
+        if ((args.length == 2) && args[0].equals("-record")) {
+            recordFile = new File(args[1]);
+        } else if (args.length != 0) {
+            System.err.println("Usage: java main.RobotFrame [-record FILE]");
+            System.exit(2);
+        }
         /* Set the Nimbus look and feel */
         //<editor-fold defaultstate="collapsed" desc=" Look and feel setting code (optional) ">
         /* If Nimbus (introduced in Java SE 6) is not available, stay with the default look and feel.
@@ -334,12 +443,39 @@ public class RobotFrame extends JFrame {
         }
         //</editor-fold>
 
+        // Показатели этапов доступны через JMX
+        Metrics.register();
+
+        SessionRecorder recorder = null;
+        if (recordFile != null) {
+            try {
+                recorder = new SessionRecorder(recordFile);
+            } catch (IOException ex) {
+                System.err.println(ex);
+                System.exit(1);
+            }
+            // Окно закрывается через System.exit, файл закрываем при завершении
+            final SessionRecorder opened = recorder;
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        opened.close();
+                    } catch (IOException ex) {
+                        ex.printStackTrace();
+                    }
+                }
+            });
+        }
+        final SessionRecorder frameRecorder = recorder;
+
         /* Create and display the form */
         java.awt.EventQueue.invokeLater(new Runnable() {
 
             @Override
             public void run() {
-                new RobotFrame().setVisible(true);
+                new RobotFrame(frameRecorder).setVisible(true);
             }
         });
     }
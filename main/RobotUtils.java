@@ -11,7 +11,7 @@ import java.awt.image.BufferedImage;
  */
 public class RobotUtils {
 
-    private static final int CLICK_DELAY = 300;
+    static final int CLICK_DELAY = 300;
     private Robot robot;
 
     /**
@@ -27,10 +27,21 @@ public class RobotUtils {
      * @param click точка по которой нужно кликнуть
      */
     public void clickPoint(Point click) {
+        clickPoint(click, CLICK_DELAY);
+    }
+    
+    /**
+     * Кликнуть в нужную точку, удерживая кнопку заданное время
+     * @param click точка по которой нужно кликнуть
+     * @param holdDelay сколько держать кнопку нажатой, мс
+     */
+    public void clickPoint(Point click, int holdDelay) {
+        StageEvent event = Metrics.start(Metrics.Stage.CLICK);
         robot.mouseMove(click.x, click.y);
         robot.mousePress(InputEvent.BUTTON1_MASK);
-        robot.delay(CLICK_DELAY);
+        robot.delay(holdDelay);
         robot.mouseRelease(InputEvent.BUTTON1_MASK);
+        Metrics.record(event);
     }
     
     /**
@@ -68,11 +79,14 @@ public class RobotUtils {
      * Если width или height равны -1, то возвращаем весь экран.
      */
     public BufferedImage getImage(int x, int y, int width, int height) {
+        StageEvent event = Metrics.start(Metrics.Stage.CAPTURE);
         Rectangle area;
         if ((width == -1) || (height == -1)) {
             area = new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
         } else area = new Rectangle(x, y, width, height);
-        return robot.createScreenCapture(area);
+        BufferedImage image = robot.createScreenCapture(area);
+        Metrics.record(event);
+        return image;
     }
 
 }
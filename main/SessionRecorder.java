@@ -0,0 +1,89 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Запись сессии игр в файл.
+ * Файл - поток GZIP: заголовок MAGIC и VERSION, затем записи GameRecord.
+ * Ячейки одного цвета сжимаются почти полностью, поэтому снимок поля
+ * занимает единицы килобайт. Каждая запись сразу сбрасывается в файл,
+ * так что при аварийном завершении сохраняются все законченные игры.
+ * Писать можно из нескольких потоков.
+ * @author aNNiMON
+ */
+public class SessionRecorder {
+
+    private static final int MAGIC = 0x46495246; // "FIRF"
+    private static final int VERSION = 1;
+
+    private final DataOutputStream out;
+    private int records;
+
+    /**
+     * Создать файл записи, существующий файл перезаписывается
+     * @param file файл записи
+     * @throws IOException ошибка создания файла
+     */
+    public SessionRecorder(File file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(file), true)));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+    }
+
+    /**
+     * Дописать игру. Ошибка записи не должна прерывать игру,
+     * поэтому она только выводится
+     * @param record запись игры
+     */
+    public synchronized void write(GameRecord record) {
+        try {
+            record.write(out);
+            out.flush();
+            records++;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public synchronized int getRecords() {
+        return records;
+    }
+
+    /**
+     * Закрыть файл, после этого записывать больше нельзя
+     * @throws IOException ошибка записи
+     */
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Открыть файл записи для чтения. Записи читаются GameRecord.read
+     * @param file файл записи
+     * @return поток, установленный на первую запись
+     * @throws IOException ошибка чтения или это не файл записи
+     */
+    public static DataInputStream open(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))));
+        try {
+            if (in.readInt() != MAGIC) throw new IOException("not a session recording: " + file);
+            int version = in.readShort();
+            if (version != VERSION) throw new IOException("unsupported recording version " + version);
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+        return in;
+    }
+}
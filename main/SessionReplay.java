@@ -0,0 +1,240 @@
+package main;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Повтор записанной сессии без экрана и Robot.
+ * Каждая игра из записи SessionRecorder заново распознаётся ImageUtils
+ * по сохранённому снимку и решается BotFloodIt. На каждую игру выводится
+ * строка JSON: совпало ли распознавание с записанным, решает ли новая
+ * последовательность записанное поле и сколько в ней ходов против записанных.
+ * В конце - итоговая строка. Способ просчёта по умолчанию - записанный;
+ * поиск с ограничением времени зависит от скорости машины, для точного
+ * сравнения двух версий лучше задать -search без -time.
+ * Запуск: java main.SessionReplay [-threads N] [-search NAME] [-time MS] запись
+ * @author aNNiMON
+ */
+public class SessionReplay {
+
+    /* Способ просчёта, записанный для поиска с ограничением времени */
+    static final String ANYTIME = "ANYTIME";
+
+    /* Способ просчёта, null - как в записи */
+    private final BotFloodIt.Search search;
+    /* Время на поиск с ограничением, мс; 0 - обычный просчёт способом search */
+    private final long solveTime;
+
+    /**
+     * Результат повтора одной игры
+     */
+    private static class Result {
+        private String json;
+        private boolean classified, valid;
+        /* Ходов в записи, -1 - записанная последовательность неполная */
+        private int recordedMoves, moves;
+    }
+
+    /**
+     * @param search способ просчёта, null - как в записи
+     * @param solveTime время на поиск, мс; 0 - обычный просчёт способом search
+     */
+    public SessionReplay(BotFloodIt.Search search, long solveTime) {
+        this.search = search;
+        this.solveTime = solveTime;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        int threads = Runtime.getRuntime().availableProcessors();
+        BotFloodIt.Search search = null;
+        long solveTime = 0;
+        File file = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-search")) {
+                    search = BotFloodIt.Search.valueOf(args[++i].toUpperCase(Locale.US));
+                } else if (args[i].equals("-time")) {
+                    solveTime = Long.parseLong(args[++i]);
+                } else {
+                    file = new File(args[i]);
+                }
+            }
+        } catch (RuntimeException ex) {
+            file = null;
+        }
+        if ((file == null) || !file.isFile()) {
+            System.err.println("Usage: java main.SessionReplay [-threads N]"
+                    + " [-search GREEDY|PRUNED|PARALLEL|OPTIMAL|BEAM] [-time MS] recording");
+            System.exit(2);
+        }
+        try {
+            new SessionReplay(search, solveTime).replayAll(file, threads, System.out);
+        } catch (IOException ex) {
+            System.err.println(ex);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Повторить все игры записи. Строки выводятся по мере готовности,
+     * в памяти одновременно не больше двух игр на поток
+     * @param file файл записи
+     * @param threads количество потоков
+     * @param out куда выводить результаты
+     * @throws IOException ошибка чтения записи
+     * @throws InterruptedException если ожидание было прервано
+     */
+    public void replayAll(File file, int threads, PrintStream out) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        int games = 0, misclassified = 0, invalid = 0, compared = 0, better = 0, worse = 0;
+        long recordedMoves = 0, moves = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        DataInputStream in = SessionRecorder.open(file);
+        try {
+            CompletionService<Result> results = new ExecutorCompletionService<Result>(pool);
+            // Номер игры каждой задачи, чтобы ошибку можно было отнести к игре
+            Map<Future<Result>, Integer> indexes = new HashMap<Future<Result>, Integer>();
+            int pending = 0;
+            boolean finished = false;
+            while (!finished || (pending > 0)) {
+                if (!finished && (pending < 2 * threads)) {
+                    final GameRecord record = GameRecord.read(in);
+                    if (record == null) {
+                        finished = true;
+                    } else {
+                        final int index = games++;
+                        indexes.put(results.submit(new Callable<Result>() {
+                            @Override
+                            public Result call() {
+                                return replay(index, record);
+                            }
+                        }), index);
+                        pending++;
+                    }
+                    continue;
+                }
+                Future<Result> future = results.take();
+                int index = indexes.remove(future);
+                pending--;
+                Result result;
+                try {
+                    result = future.get();
+                } catch (ExecutionException ex) {
+                    out.println("{\"game\":" + index + ",\"error\":"
+                            + BatchSolver.quote(String.valueOf(ex.getCause())) + "}");
+                    invalid++;
+                    continue;
+                }
+                out.println(result.json);
+                out.flush();
+                if (!result.classified) misclassified++;
+                if (!result.valid) invalid++;
+                if (result.valid && (result.recordedMoves >= 0)) {
+                    compared++;
+                    recordedMoves += result.recordedMoves;
+                    moves += result.moves;
+                    if (result.moves < result.recordedMoves) better++;
+                    if (result.moves > result.recordedMoves) worse++;
+                }
+            }
+        } finally {
+            in.close();
+            pool.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        out.println(String.format(Locale.US,
+                "{\"games\":%d,\"misclassified\":%d,\"invalid\":%d,\"compared\":%d,\"better\":%d,\"worse\":%d,"
+                + "\"recordedMoves\":%d,\"moves\":%d,\"timeMs\":%.1f,\"gamesPerSecond\":%.1f}",
+                games, misclassified, invalid, compared, better, worse,
+                recordedMoves, moves, seconds * 1e3, (seconds > 0) ? games / seconds : 0));
+    }
+
+    /*
+     * Повторить одну игру: распознать снимок, решить и сравнить с записью
+     */
+    private Result replay(int index, GameRecord record) {
+        long start = System.nanoTime();
+        int[][] table = record.createImageUtils().getBoardColors();
+        long classified = System.nanoTime();
+        BotFloodIt bfi = new BotFloodIt(table);
+        byte[] sequence = solve(bfi, record);
+        long solved = System.nanoTime();
+
+        Result result = new Result();
+        // Палитра нумеруется в порядке появления цветов, поэтому при том же
+        // распознавании номера совпадают с записанными
+        byte[][] ids = GameRecord.toIds(table, bfi.getColors());
+        result.classified = Arrays.deepEquals(ids, record.getIds());
+        if (result.classified) {
+            result.valid = record.isSolution(sequence);
+        } else {
+            result.valid = isSolution(ids, sequence);
+        }
+        result.recordedMoves = record.isComplete() ? record.getSequence().length : -1;
+        result.moves = sequence.length;
+
+        StringBuilder json = new StringBuilder();
+        json.append(String.format(Locale.US,
+                "{\"game\":%d,\"size\":%d,\"colors\":%d,\"solver\":%s,\"classified\":%b,\"valid\":%b,"
+                + "\"recordedMoves\":%d,\"moves\":%d",
+                index, record.getBoardSize(), record.getPalette().length, BatchSolver.quote(getSolverName(record)),
+                result.classified, result.valid, result.recordedMoves, result.moves));
+        json.append(String.format(Locale.US,
+                ",\"timings\":{\"classifyMs\":%.3f,\"solveMs\":%.3f,\"recordedClassifyMs\":%.3f,\"recordedSolveMs\":%.3f}}",
+                (classified - start) / 1e6, (solved - classified) / 1e6,
+                record.getTiming(Metrics.Stage.CLASSIFY) / 1e6, record.getTiming(Metrics.Stage.SOLVE) / 1e6));
+        result.json = json.toString();
+        return result;
+    }
+
+    /*
+     * Решить поле заданным или записанным способом
+     */
+    private byte[] solve(BotFloodIt bfi, GameRecord record) {
+        long time = solveTime;
+        if (search != null) {
+            bfi.setSearch(search);
+        } else if (record.getSolver().equals(ANYTIME)) {
+            time = record.getSolveTime();
+        } else {
+            bfi.setSearch(BotFloodIt.Search.valueOf(record.getSolver()));
+        }
+        if (time > 0) {
+            return bfi.getFillSequence(System.currentTimeMillis() + time, null);
+        }
+        return bfi.getFillSequence();
+    }
+
+    private String getSolverName(GameRecord record) {
+        if (solveTime > 0) return ANYTIME;
+        if (search != null) return search.name();
+        return record.getSolver();
+    }
+
+    /*
+     * Последовательность заливает поле из номеров ids
+     */
+    private static boolean isSolution(byte[][] ids, byte[] sequence) {
+        FloodBoard board = new FloodBoard(ids);
+        for (byte color : sequence) {
+            board.fill(color);
+        }
+        return board.isCompleted();
+    }
+}
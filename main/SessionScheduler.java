@@ -0,0 +1,397 @@
+package main;
+
+import java.awt.AWTException;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Одновременная игра на нескольких полях.
+ * У каждого поля свой поток: захват, распознавание, просчёт и проверка
+ * ходов идут независимо, а нажатия - через общую очередь ClickDispatcher,
+ * потому что мышь одна. Пока одно поле ждёт перекраски или решатель,
+ * другие успевают сделать свои ходы.
+ * Чтобы поля не мешали друг другу, полные снимки и поиск кнопок
+ * каждого поля ограничены его окном: полем с отступом в размер поля,
+ * обрезанным посередине между соседними полями.
+ * Поля играют в виртуальных потоках, если JVM их поддерживает.
+ * Запуск: java main.SessionScheduler [-games N] [-record FILE] -board SIZE,CELL,X,Y [-board ...]
+ * @author aNNiMON
+ */
+public class SessionScheduler {
+
+    /* Пауза между проверками, началась ли новая игра, мс */
+    private static final int NEW_GAME_DELAY = 500;
+    /* С какого размера поля ходить, не дожидаясь конца просчёта */
+    private static final int PIPELINE_MIN_SIZE = 20;
+    /* Время на поиск на малых полях, мс */
+    private static final long SOLVE_TIME = 1000;
+
+    private final RobotUtils robot;
+    private final ClickDispatcher dispatcher;
+    private final List<Board> boards;
+    /* Запись сыгранных игр, null - не записывать */
+    private SessionRecorder recorder;
+    private volatile boolean stopped;
+    /* Время игры всех полей */
+    private volatile long elapsedNanos;
+
+    /**
+     * Поле на экране и его статистика
+     */
+    private class Board {
+
+        private final CaptureSession session;
+        private final String name;
+        private volatile LivePlayer player;
+        /* Снимок, с которого началась текущая игра */
+        private ImageUtils gameCapture;
+        private int games, failures;
+        private long moves;
+
+        Board(CaptureSession session, String name) {
+            this.session = session;
+            this.name = name;
+        }
+
+        /*
+         * Сыграть games игр подряд, дожидаясь каждой новой игры.
+         * Результат каждой игры выводится строкой JSON в out.
+         * Ошибка в игре (например, кнопки не распознаны) засчитывается
+         * как неудача и не останавливает следующие игры на этом поле
+         */
+        void play(int gamesCount, PrintStream out) {
+            for (int game = 0; (game < gamesCount) && !stopped; game++) {
+                long[] timings = new long[Metrics.Stage.values().length];
+                long start = System.nanoTime();
+                player = null;
+                boolean solved;
+                try {
+                    int[][] table = waitForGame(timings);
+                    if (table == null) return;
+                    start = System.nanoTime();
+                    solved = playGame(table, timings);
+                } catch (RuntimeException ex) {
+                    synchronized (this) {
+                        failures++;
+                    }
+                    out.println("{\"board\":" + BatchSolver.quote(name) + ",\"game\":" + (game + 1)
+                            + ",\"error\":" + BatchSolver.quote(String.valueOf(ex)) + "}");
+                    // Поле могло остаться на экране как есть, следующую игру ждём с паузой
+                    sleep(NEW_GAME_DELAY);
+                    continue;
+                }
+                synchronized (this) {
+                    if (solved) games++; else failures++;
+                }
+                out.println(String.format(Locale.US,
+                        "{\"board\":%s,\"game\":%d,\"solved\":%b,\"moves\":%d,\"resyncs\":%d,\"timeMs\":%.1f}",
+                        BatchSolver.quote(name), game + 1, solved, (player == null) ? 0 : player.getMoves(),
+                        (player == null) ? 0 : player.getResyncs(), (System.nanoTime() - start) / 1e6));
+            }
+        }
+
+        /*
+         * Дождаться поля, которое ещё не залито.
+         * Время захвата и распознавания последнего снимка записывается в timings
+         */
+        private int[][] waitForGame(long[] timings) {
+            while (!stopped) {
+                long start = System.nanoTime();
+                ImageUtils iu = session.capture();
+                long captured = System.nanoTime();
+                int[][] table = iu.getBoardColors();
+                if (!isFilled(table)) {
+                    timings[Metrics.Stage.CAPTURE.ordinal()] = captured - start;
+                    timings[Metrics.Stage.CLASSIFY.ordinal()] = System.nanoTime() - captured;
+                    gameCapture = iu;
+                    return table;
+                }
+                sleep(NEW_GAME_DELAY);
+            }
+            return null;
+        }
+
+        private boolean playGame(int[][] table, long[] timings) {
+            BotFloodIt bfi = new BotFloodIt(table);
+            int[] colors = bfi.getColors();
+            long start = System.nanoTime();
+            Point[] buttons = session.getButtons(colors);
+            timings[Metrics.Stage.DETECT.ordinal()] = System.nanoTime() - start;
+            if (buttons == null) return false;
+            LivePlayer live = new LivePlayer(session, buttons, colors);
+            live.setDispatcher(dispatcher);
+            player = live;
+            if (stopped) live.stop();
+            boolean solved;
+            String solver;
+            int solveTime;
+            if (table.length >= PIPELINE_MIN_SIZE) {
+                solver = BotFloodIt.Search.GREEDY.name();
+                solveTime = 0;
+                start = System.nanoTime();
+                // Просчёт идёт вместе с игрой, отдельно его время не известно
+                solved = live.play(table, bfi);
+            } else {
+                solver = SessionReplay.ANYTIME;
+                solveTime = (int) SOLVE_TIME;
+                start = System.nanoTime();
+                byte[] sequence = bfi.getFillSequence(System.currentTimeMillis() + SOLVE_TIME, null);
+                timings[Metrics.Stage.SOLVE.ordinal()] = System.nanoTime() - start;
+                start = System.nanoTime();
+                solved = live.play(table, sequence);
+            }
+            timings[Metrics.Stage.MOVE.ordinal()] = System.nanoTime() - start;
+            synchronized (this) {
+                moves += live.getMoves();
+            }
+            if (recorder != null) {
+                recorder.write(new GameRecord(gameCapture, session.getBoard(), colors, table,
+                        solver, solveTime, live.getInitialMoves(), live, solved, timings));
+            }
+            return solved;
+        }
+    }
+
+    /**
+     * @param robot общий доступ к экрану и мыши
+     */
+    public SessionScheduler(RobotUtils robot) {
+        this.robot = robot;
+        dispatcher = new ClickDispatcher(robot);
+        boards = new ArrayList<Board>();
+    }
+
+    public static void main(String[] args) throws AWTException, InterruptedException, IOException {
+        int games = 1;
+        File recordFile = null;
+        List<int[]> regions = new ArrayList<int[]>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-games")) {
+                    games = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-record")) {
+                    recordFile = new File(args[++i]);
+                } else if (args[i].equals("-board")) {
+                    String[] values = args[++i].split(",");
+                    if (values.length != 4) throw new IllegalArgumentException(args[i]);
+                    int[] region = new int[4];
+                    for (int j = 0; j < region.length; j++) {
+                        region[j] = Integer.parseInt(values[j].trim());
+                    }
+                    regions.add(region);
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (RuntimeException ex) {
+            regions.clear();
+        }
+        if (regions.isEmpty()) {
+            System.err.println("Usage: java main.SessionScheduler [-games N] [-record FILE]"
+                    + " -board SIZE,CELL,X,Y [-board SIZE,CELL,X,Y ...]");
+            System.exit(2);
+        }
+        Metrics.register();
+        SessionScheduler scheduler = new SessionScheduler(new RobotUtils());
+        for (int[] region : regions) {
+            scheduler.addBoard(region[0], region[1], region[2], region[3]);
+        }
+        SessionRecorder recorder = null;
+        if (recordFile != null) {
+            recorder = new SessionRecorder(recordFile);
+            scheduler.setRecorder(recorder);
+        }
+        try {
+            scheduler.playAll(games, System.out);
+        } finally {
+            if (recorder != null) recorder.close();
+        }
+        System.out.println(scheduler.getSummary());
+        scheduler.shutdown();
+    }
+
+    /**
+     * Записывать каждую сыгранную игру для повтора в SessionReplay
+     * @param recorder запись сессии, null - не записывать
+     */
+    public void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Добавить поле
+     * @param boardSize размерность поля
+     * @param cellSize размер ячейки
+     * @param x координата поля на экране
+     * @param y координата поля на экране
+     */
+    public void addBoard(int boardSize, int cellSize, int x, int y) {
+        CaptureSession session = new CaptureSession(robot, boardSize, cellSize, x, y);
+        boards.add(new Board(session, x + "," + y));
+    }
+
+    /**
+     * Сыграть на всех полях одновременно, на каждом по games игр
+     * @param games сколько игр сыграть на каждом поле
+     * @param out куда выводить результаты игр
+     * @throws InterruptedException если ожидание было прервано
+     */
+    public void playAll(final int games, final PrintStream out) throws InterruptedException {
+        assignWindows();
+        long start = System.nanoTime();
+        ExecutorService pool = createExecutor();
+        try {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (final Board board : boards) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        board.play(games, out);
+                        return null;
+                    }
+                });
+            }
+            List<Future<Void>> results = pool.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException ex) {
+                    // Ошибки игр выводятся в play, сюда доходят только Error
+                    out.println("{\"board\":" + BatchSolver.quote(boards.get(i).name)
+                            + ",\"error\":" + BatchSolver.quote(String.valueOf(ex.getCause())) + "}");
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            elapsedNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Остановить игру на всех полях после текущих ходов
+     */
+    public void stop() {
+        stopped = true;
+        for (Board board : boards) {
+            LivePlayer player = board.player;
+            if (player != null) player.stop();
+        }
+    }
+
+    /**
+     * Остановить поток нажатий, после этого играть больше нельзя
+     */
+    public void shutdown() {
+        stop();
+        dispatcher.shutdown();
+    }
+
+    /**
+     * Общая статистика: сыгранные игры, ходы и игр в час по всем полям
+     * @return строка JSON
+     */
+    public String getSummary() {
+        int games = 0, failures = 0;
+        long moves = 0;
+        for (Board board : boards) {
+            synchronized (board) {
+                games += board.games;
+                failures += board.failures;
+                moves += board.moves;
+            }
+        }
+        double hours = elapsedNanos / 3.6e12;
+        return String.format(Locale.US,
+                "{\"boards\":%d,\"games\":%d,\"failures\":%d,\"moves\":%d,\"gamesPerHour\":%.1f,\"clickQueue\":\"%s\"}",
+                boards.size(), games, failures, moves, (hours > 0) ? games / hours : 0,
+                dispatcher.getQueueTime());
+    }
+
+    /*
+     * Потоки для игры на полях. Поле почти всё время ждёт перекраски
+     * или очереди нажатий, поэтому подходят виртуальные потоки (Java 21).
+     * Метод ищется через reflection, на старых JVM - по потоку на поле
+     */
+    private ExecutorService createExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newFixedThreadPool(Math.max(1, boards.size()));
+        }
+    }
+
+    /*
+     * Ограничить полные снимки каждого поля его окном
+     */
+    private void assignWindows() {
+        if (boards.size() < 2) return;
+        List<Rectangle> rects = new ArrayList<Rectangle>();
+        for (Board board : boards) {
+            CaptureSession session = board.session;
+            int size = session.getBoardSize() * session.getCellSize();
+            Point corner = session.getBoard();
+            rects.add(new Rectangle(corner.x, corner.y, size, size));
+        }
+        for (int i = 0; i < boards.size(); i++) {
+            Rectangle rect = rects.get(i);
+            int size = Math.max(rect.width, rect.height);
+            int left = Math.max(0, rect.x - size), top = Math.max(0, rect.y - size);
+            int right = rect.x + rect.width + size, bottom = rect.y + rect.height + size;
+            for (int j = 0; j < boards.size(); j++) {
+                if (j == i) continue;
+                Rectangle other = rects.get(j);
+                // Промежутки между полями по горизонтали и вертикали, граница - по большему
+                int gapX = Math.max(other.x - (rect.x + rect.width), rect.x - (other.x + other.width));
+                int gapY = Math.max(other.y - (rect.y + rect.height), rect.y - (other.y + other.height));
+                if (Math.max(gapX, gapY) < 0) continue;
+                if (gapX >= gapY) {
+                    if (other.x > rect.x) {
+                        right = Math.min(right, (rect.x + rect.width + other.x) / 2);
+                    } else {
+                        left = Math.max(left, (other.x + other.width + rect.x) / 2);
+                    }
+                } else {
+                    if (other.y > rect.y) {
+                        bottom = Math.min(bottom, (rect.y + rect.height + other.y) / 2);
+                    } else {
+                        top = Math.max(top, (other.y + other.height + rect.y) / 2);
+                    }
+                }
+            }
+            boards.get(i).session.setWindow(new Rectangle(left, top, right - left, bottom - top));
+        }
+    }
+
+    /*
+     * Все ячейки одного цвета - игра закончена
+     */
+    private static boolean isFilled(int[][] table) {
+        for (int[] row : table) {
+            for (int color : row) {
+                if (color != table[0][0]) return false;
+            }
+        }
+        return true;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package main;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR для одного выполнения этапа Metrics.Stage.
+ * У каждого этапа свой тип события, поэтому в записи JFR их можно
+ * включать и фильтровать по отдельности, например:
+ * java -XX:StartFlightRecording:filename=bot.jfr ...
+ * Событие создаётся Metrics.start и заканчивается Metrics.record,
+ * без включённой записи это два вызова System.nanoTime().
+ * Базовый класс не должен ссылаться на подклассы: JFR дописывает код
+ * событий при загрузке класса, и ссылка загрузила бы подкласс раньше времени.
+ * @author aNNiMON
+ */
+@Category({"Flood-It", "Stages"})
+@StackTrace(false)
+public abstract class StageEvent extends Event {
+
+    /* Время начала по System.nanoTime(), для гистограмм Metrics */
+    transient long startNanos;
+    /* Счётчик заливок Metrics в начале замера */
+    transient long startFills;
+
+    /**
+     * Этап, к которому относится событие
+     */
+    abstract Metrics.Stage getStage();
+
+    @Name("main.Capture")
+    @Label("Capture")
+    @Description("Захват экрана")
+    static final class Capture extends StageEvent {
+        @Override
+        Metrics.Stage getStage() {
+            return Metrics.Stage.CAPTURE;
+        }
+    }
+
+    @Name("main.Detect")
+    @Label("Detect")
+    @Description("Поиск поля и кнопок на снимке")
+    static final class Detect extends StageEvent {
+        @Override
+        Metrics.Stage getStage() {
+            return Metrics.Stage.DETECT;
+        }
+    }
+
+    @Name("main.Classify")
+    @Label("Classify")
+    @Description("Распознавание цветов ячеек")
+    static final class Classify extends StageEvent {
+        @Override
+        Metrics.Stage getStage() {
+            return Metrics.Stage.CLASSIFY;
+        }
+    }
+
+    @Name("main.Solve")
+    @Label("Solve")
+    @Description("Просчёт последовательности ходов")
+    static final class Solve extends StageEvent {
+
+        @Label("Expanded Nodes")
+        long expandedNodes;
+
+        @Label("Brute Force Nodes")
+        long bruteForceNodes;
+
+        @Label("Transposition Hits")
+        long transpositionHits;
+
+        @Label("Transposition Misses")
+        long transpositionMisses;
+
+        @Label("Fill Operations")
+        long fillOperations;
+
+        @Override
+        Metrics.Stage getStage() {
+            return Metrics.Stage.SOLVE;
+        }
+    }
+
+    @Name("main.Click")
+    @Label("Click")
+    @Description("Нажатие кнопки цвета")
+    static final class Click extends StageEvent {
+        @Override
+        Metrics.Stage getStage() {
+            return Metrics.Stage.CLICK;
+        }
+    }
+
+    @Name("main.Move")
+    @Label("Move")
+    @Description("Ход от нажатия до подтверждения на экране")
+    static final class Move extends StageEvent {
+        @Override
+        Metrics.Stage getStage() {
+            return Metrics.Stage.MOVE;
+        }
+    }
+
+    @Name("main.Change")
+    @Label("Change")
+    @Description("От нажатия до перекраски опрашиваемых ячеек")
+    static final class Change extends StageEvent {
+        @Override
+        Metrics.Stage getStage() {
+            return Metrics.Stage.CHANGE;
+        }
+    }
+}
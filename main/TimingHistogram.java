@@ -0,0 +1,140 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Гистограмма времени выполнения.
+ * Корзины - степени двойки микросекунд, поэтому запись не выделяет память,
+ * а процентили известны с точностью до корзины.
+ * @author aNNiMON
+ */
+public class TimingHistogram implements TimingHistogramMBean {
+
+    /* Количество корзин: последняя - от 2^30 мкс и больше */
+    private static final int BUCKETS = 32;
+
+    private final long[] buckets;
+    private long count, totalNanos, maxNanos;
+    /* Операции этапа, для просчёта - заливки */
+    private long operations;
+
+    public TimingHistogram() {
+        buckets = new long[BUCKETS];
+    }
+
+    /**
+     * Добавить замер
+     * @param nanos время в наносекундах
+     */
+    public void record(long nanos) {
+        record(nanos, 0);
+    }
+
+    /**
+     * Добавить замер вместе с количеством операций этапа
+     * @param nanos время в наносекундах
+     * @param operations сколько операций выполнено за замер
+     */
+    public synchronized void record(long nanos, long operations) {
+        this.operations += operations;
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros));
+        buckets[bucket]++;
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    /**
+     * Удалить все замеры
+     */
+    public synchronized void reset() {
+        Arrays.fill(buckets, 0);
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+        operations = 0;
+    }
+
+    @Override
+    public synchronized long getCount() {
+        return count;
+    }
+
+    @Override
+    public synchronized long getOperations() {
+        return operations;
+    }
+
+    @Override
+    public synchronized double getOperationsPerSecond() {
+        return (totalNanos == 0) ? 0 : operations * 1e9 / totalNanos;
+    }
+
+    @Override
+    public synchronized double getMeanMillis() {
+        return (count == 0) ? 0 : totalNanos / 1e6 / count;
+    }
+
+    @Override
+    public synchronized double getMaxMillis() {
+        return maxNanos / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return getPercentileMillis(50);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return getPercentileMillis(99);
+    }
+
+    /**
+     * Время, которое не превышают percentile процентов замеров
+     * @param percentile процент замеров, от 0 до 100
+     * @return верхняя граница корзины, мс
+     */
+    public synchronized double getPercentileMillis(double percentile) {
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(getMaxMillis(), (1L << i) / 1e3);
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * Количество замеров в каждой корзине: в корзине i время
+     * от 2^(i-1) до 2^i мкс, в нулевой - меньше микросекунды
+     */
+    public synchronized long[] getBuckets() {
+        return buckets.clone();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "n=%d mean=%.2fms p50<=%.2fms p90<=%.2fms p99<=%.2fms max=%.2fms",
+                count, getMeanMillis(), getPercentileMillis(50), getPercentileMillis(90),
+                getPercentileMillis(99), getMaxMillis()));
+        if (count > 0) {
+            sb.append(" [");
+            boolean first = true;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (buckets[i] == 0) continue;
+                if (!first) sb.append(", ");
+                sb.append(String.format(Locale.US, "<%.3fms:%d", (1L << i) / 1e3, buckets[i]));
+                first = false;
+            }
+            sb.append(']');
+        }
+        return sb.toString();
+    }
+}
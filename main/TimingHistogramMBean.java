@@ -0,0 +1,44 @@
+package main;
+
+/**
+ * Время одного этапа для JMX в виде чисел, по которым можно строить графики.
+ * Регистрируется для каждого этапа под именем main:type=Metrics,stage=ЭТАП.
+ * @author aNNiMON
+ */
+public interface TimingHistogramMBean {
+
+    /**
+     * Количество замеров
+     */
+    long getCount();
+
+    /**
+     * Количество операций этапа, для просчёта - заливки
+     */
+    long getOperations();
+
+    /**
+     * Операций в секунду за всё время этапа
+     */
+    double getOperationsPerSecond();
+
+    /**
+     * Среднее время, мс
+     */
+    double getMeanMillis();
+
+    /**
+     * Медиана с точностью до корзины, мс
+     */
+    double getP50Millis();
+
+    /**
+     * 99-й процентиль с точностью до корзины, мс
+     */
+    double getP99Millis();
+
+    /**
+     * Наибольшее время, мс
+     */
+    double getMaxMillis();
+}
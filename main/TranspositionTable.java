@@ -0,0 +1,139 @@
+package main;
+
+/**
+ * Таблица уже просчитанных состояний с открытой адресацией.
+ * Ключ - хеш состояния (FloodState.getHash), к нему хранятся
+ * значение и глубина. Размер фиксирован, при переполнении корзины
+ * вытесняется запись с наименьшей глубиной.
+ * @author aNNiMON
+ */
+public class TranspositionTable {
+
+    /* Размер одной записи в байтах: ключ, значение и глубина */
+    private static final int ENTRY_BYTES = 20;
+    /* Количество записей в корзине */
+    private static final int BUCKET_SIZE = 4;
+    /* Ключ пустой записи */
+    private static final long EMPTY = 0;
+
+    private final long[] keys;
+    private final long[] values;
+    private final int[] depths;
+    private final int mask;
+    /* Статистика обращений */
+    private long hits, misses, stores, replacements;
+
+    /**
+     * @param maxBytes наибольший объём памяти под таблицу
+     */
+    public TranspositionTable(long maxBytes) {
+        long entries = Math.max(BUCKET_SIZE, maxBytes / ENTRY_BYTES);
+        int capacity = Integer.highestOneBit((int) Math.min(entries, 1 << 30));
+        keys = new long[capacity];
+        values = new long[capacity];
+        depths = new int[capacity];
+        mask = capacity - BUCKET_SIZE;
+    }
+
+    /**
+     * Найти запись
+     * @param key хеш состояния
+     * @return номер записи или -1, если её нет
+     */
+    public int find(long key) {
+        key = normalize(key);
+        int start = index(key);
+        for (int i = start; i < start + BUCKET_SIZE; i++) {
+            if (keys[i] == key) {
+                hits++;
+                return i;
+            }
+        }
+        misses++;
+        return -1;
+    }
+
+    /**
+     * Получить значение найденной записи
+     * @param entry номер записи
+     */
+    public long getValue(int entry) {
+        return values[entry];
+    }
+
+    /**
+     * Получить глубину найденной записи
+     * @param entry номер записи
+     */
+    public int getDepth(int entry) {
+        return depths[entry];
+    }
+
+    /**
+     * Сохранить запись. Если в корзине нет места, вытесняется
+     * запись с наименьшей глубиной, но только не более глубокая, чем новая.
+     * @param key хеш состояния
+     * @param depth глубина, определяющая ценность записи
+     * @param value значение
+     */
+    public void store(long key, int depth, long value) {
+        key = normalize(key);
+        int start = index(key);
+        int target = -1;
+        for (int i = start; i < start + BUCKET_SIZE; i++) {
+            if ((keys[i] == key) || (keys[i] == EMPTY)) {
+                target = i;
+                break;
+            }
+            if ((target == -1) || (depths[i] < depths[target])) {
+                target = i;
+            }
+        }
+        if ((keys[target] != key) && (keys[target] != EMPTY)) {
+            if (depths[target] > depth) return;
+            replacements++;
+        }
+        keys[target] = key;
+        depths[target] = depth;
+        values[target] = value;
+        stores++;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getStores() {
+        return stores;
+    }
+
+    public long getReplacements() {
+        return replacements;
+    }
+
+    /**
+     * Количество записей, которое помещается в таблицу
+     */
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    /*
+     * Первая запись корзины для ключа
+     */
+    private int index(long key) {
+        long mixed = key ^ (key >>> 32);
+        return ((int) mixed * BUCKET_SIZE) & mask;
+    }
+
+    /*
+     * Нулевой ключ зарезервирован для пустых записей
+     */
+    private long normalize(long key) {
+        return (key == EMPTY) ? 1 : key;
+    }
+}
@@ -0,0 +1,73 @@
+package main;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Подсчёт белых точек строк упакованного RGB-изображения через Vector API.
+ * Модуль jdk.incubator.vector подключается только ключом
+ * --add-modules jdk.incubator.vector, без него класс даже не загружается:
+ * ImageUtils сначала проверяет наличие модуля, а без модуля или при
+ * векторах в один int остаётся скалярный цикл.
+ * Результат совпадает со скалярным подсчётом.
+ * @author aNNiMON
+ */
+final class VectorProjection {
+
+    /* Размер вектора */
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private VectorProjection() {
+    }
+
+    /**
+     * Есть ли выигрыш от векторов: вектор шире одного int
+     */
+    static boolean isUseful() {
+        return SPECIES.length() > 1;
+    }
+
+    /**
+     * Подсчёт белых точек в строках [fromY, toY), как в ImageUtils.projectRows
+     * @param data пиксели, 8 бит на канал в младших 24 битах
+     * @param start индекс первого пикселя изображения
+     * @param stride длина строки в массиве
+     * @param w ширина изображения
+     * @param sumThreshold порог суммы каналов
+     * @param keep 1 - белые точки светлее порога, 0 - темнее
+     * @param horizontal сюда записывается количество белых точек в строках
+     * @param vertical сюда добавляется количество белых точек в столбцах
+     */
+    static void projectRows(int[] data, int start, int stride, int w, int fromY, int toY,
+                            int sumThreshold, int keep, int[] horizontal, int[] vertical) {
+        VectorSpecies<Integer> species = SPECIES;
+        int bound = species.loopBound(w);
+        IntVector threshold = IntVector.broadcast(species, sumThreshold);
+        IntVector keepLanes = IntVector.broadcast(species, keep);
+        for (int y = fromY; y < toY; y++) {
+            int pos = start + y * stride;
+            IntVector counts = IntVector.zero(species);
+            int x = 0;
+            for (; x < bound; x += species.length()) {
+                IntVector color = IntVector.fromArray(species, data, pos + x);
+                IntVector sum = color.lanewise(VectorOperators.LSHR, 16).and(0xff)
+                        .add(color.lanewise(VectorOperators.LSHR, 8).and(0xff))
+                        .add(color.and(0xff));
+                IntVector white = sum.sub(threshold).lanewise(VectorOperators.LSHR, 31)
+                        .lanewise(VectorOperators.XOR, keepLanes);
+                counts = counts.add(white);
+                IntVector.fromArray(species, vertical, x).add(white).intoArray(vertical, x);
+            }
+            int count = counts.reduceLanes(VectorOperators.ADD);
+            for (; x < w; x++) {
+                int color = data[pos + x];
+                int sum = ((color >> 16) & 0xff) + ((color >> 8) & 0xff) + (color & 0xff);
+                int white = ((sum - sumThreshold) >>> 31) ^ keep;
+                count += white;
+                vertical[x] += white;
+            }
+            horizontal[y] = count;
+        }
+    }
+}